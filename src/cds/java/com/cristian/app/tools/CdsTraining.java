@@ -0,0 +1,40 @@
+package com.cristian.app.tools;
+
+import com.cristian.app.Lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Workload the cds profile runs while the JVM records the classes it loads into an AppCDS archive.
+ * The script goes through every engine and then twice through the AST cache, once to write the
+ * entry and once to read it, so all of their classes end up in the archive.
+ */
+public class CdsTraining {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("USAGE: cds_training <script>");
+            System.exit(64);
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Path cache = Files.createTempDirectory("lox-cds");
+        try {
+            for (String engine : new String[]{"tree", "closure", "vm", "jit"}) {
+                Lox.main(new String[]{"--engine=" + engine, args[0]});
+            }
+            Lox.main(new String[]{"--ast-cache=" + cache, args[0]});
+            Lox.main(new String[]{"--ast-cache=" + cache, args[0]});
+        } finally {
+            System.setOut(out);
+            try (Stream<Path> files = Files.walk(cache)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
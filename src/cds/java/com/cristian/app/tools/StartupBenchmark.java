@@ -0,0 +1,75 @@
+package com.cristian.app.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time from launching a fresh JVM on a one-line script until its first print arrives, without class
+ * data sharing, with the JDK's default archive, and with the AppCDS archive built by the cds profile.
+ * Runs of the three take turns, so a slow spell on the machine hits all of them alike.
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("USAGE: startup_benchmark <jar> <archive> [runs]");
+            System.exit(64);
+        }
+        String jar = args[0];
+        String archive = args[1];
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        Path script = Files.createTempFile("startup", ".lox");
+        Files.writeString(script, "print \"ready\";\n");
+
+        // -Xshare:on fails instead of quietly running without the archive when it can't be used.
+        if (launch(List.of("-Xshare:on", "-XX:SharedArchiveFile=" + archive), jar, script) < 0) {
+            System.err.println("The JVM can't use " + archive + " with " + jar + ".");
+            System.exit(1);
+        }
+
+        Map<String, List<String>> configurations = new LinkedHashMap<>();
+        configurations.put("no CDS", List.of("-Xshare:off"));
+        configurations.put("JDK CDS", List.of());
+        configurations.put("AppCDS", List.of("-XX:SharedArchiveFile=" + archive));
+        Map<String, double[]> times = new LinkedHashMap<>();
+        configurations.keySet().forEach(name -> times.put(name, new double[runs]));
+        for (int i = 0; i < runs; i++) {
+            for (Map.Entry<String, List<String>> configuration : configurations.entrySet()) {
+                times.get(configuration.getKey())[i] = launch(configuration.getValue(), jar, script);
+            }
+        }
+        Files.delete(script);
+
+        System.out.printf("%-10s %12s %12s%n", "", "median (ms)", "p90 (ms)");
+        times.forEach((name, values) -> {
+            Arrays.sort(values);
+            System.out.printf("%-10s %12.1f %12.1f%n", name, values[runs / 2], values[(int) (runs * 0.9)]);
+        });
+    }
+
+    // Milliseconds until the first line of output, or -1 if the JVM exited with an error.
+    private static double launch(List<String> options, String jar, Path script)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(options);
+        command.addAll(List.of("-jar", jar, script.toString()));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            output.readLine();
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            while (output.readLine() != null) {
+            }
+            return process.waitFor() == 0 ? elapsed : -1;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.cristian.app.benchmarks;
+
+import com.cristian.app.lox.Scanner;
+import com.cristian.app.lox.TokenType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.cristian.app.lox.TokenType.*;
+
+/**
+ * Tells keywords from identifiers for every word of a workload, the way the scanner used to, with a
+ * substring and a HashMap lookup, against {@link Scanner#keyword}, which checks the characters in
+ * place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class KeywordBenchmark {
+    private static final Map<String, TokenType> keywords = new HashMap<>();
+
+    static {
+        keywords.put("and", AND);
+        keywords.put("class", CLASS);
+        keywords.put("else", ELSE);
+        keywords.put("false", FALSE);
+        keywords.put("true", TRUE);
+        keywords.put("if", IF);
+        keywords.put("while", WHILE);
+        keywords.put("for", FOR);
+        keywords.put("nil", NIL);
+        keywords.put("or", OR);
+        keywords.put("print", PRINT);
+        keywords.put("return", RETURN);
+        keywords.put("super", SUPER);
+        keywords.put("this", THIS);
+        keywords.put("var", VAR);
+        keywords.put("fun", FUN);
+        keywords.put("break", BREAK);
+        keywords.put("new", NEW);
+    }
+
+    @Param({"binary_trees", "method_calls", "field_access"})
+    public String workload;
+
+    private char[] source;
+    private int[] starts;
+    private int[] lengths;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream input = KeywordBenchmark.class.getResourceAsStream("/workloads/" + workload + ".lox")) {
+            if (input == null) throw new IOException("No workload named " + workload);
+            source = new String(input.readAllBytes(), StandardCharsets.UTF_8).toCharArray();
+        }
+        starts = new int[source.length];
+        lengths = new int[source.length];
+        int words = 0;
+        for (int i = 0; i < source.length; ) {
+            if (!Character.isLetter(source[i])) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < source.length && Character.isLetterOrDigit(source[i])) i++;
+            starts[words] = start;
+            lengths[words] = i - start;
+            words++;
+        }
+        starts = Arrays.copyOf(starts, words);
+        lengths = Arrays.copyOf(lengths, words);
+    }
+
+    @Benchmark
+    public void hashMap(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            String text = new String(source, starts[i], lengths[i]);
+            TokenType type = keywords.get(text);
+            blackhole.consume(type == null ? IDENTIFIER : type);
+        }
+    }
+
+    @Benchmark
+    public void inPlace(Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(Scanner.keyword(source, starts[i], lengths[i]));
+        }
+    }
+}
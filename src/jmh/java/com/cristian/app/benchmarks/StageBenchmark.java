@@ -0,0 +1,79 @@
+package com.cristian.app.benchmarks;
+
+import com.cristian.app.lox.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times each stage of running a Lox program, from scanning to interpreting, on the workloads in
+ * src/jmh/resources/workloads. Every stage starts from the output of the previous one, prepared
+ * once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StageBenchmark {
+    @Param({"fib", "binary_trees", "method_calls", "instantiation", "string_equality", "field_access"})
+    public String workload;
+
+    private String source;
+    private TokenBuffer tokens;
+    private List<Stmt> parsed;
+    private List<Stmt> resolved;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream input = StageBenchmark.class.getResourceAsStream("/workloads/" + workload + ".lox")) {
+            if (input == null) throw new IOException("No workload named " + workload);
+            source = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        tokens = new Scanner(source).scan();
+        parsed = new Parser(tokens).parse();
+        resolved = new Parser(tokens).parse();
+        new Resolver().resolve(resolved);
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public TokenBuffer scan() {
+        return new Scanner(source).scan();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> resolve() {
+        new Resolver().resolve(parsed);
+        return parsed;
+    }
+
+    @Benchmark
+    public List<Stmt> optimize() {
+        return new Optimizer().optimize(resolved);
+    }
+
+    @Benchmark
+    public void interpret() {
+        new Interpreter().interpret(resolved);
+    }
+}
@@ -1,31 +1,154 @@
 package com.cristian.app;
 
 import com.cristian.app.lox.*;
+import com.cristian.app.lox.Compiler;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class Lox {
+    enum Engine {
+        TREE, CLOSURE, VM, JIT
+    }
+
     private static boolean hadError = false;
     private static boolean hadRuntimeError = false;
     private static final Interpreter interpreter = new Interpreter();
+    private static final ClosureCompiler closureCompiler = new ClosureCompiler();
+    private static final VM vm = new VM();
+    private static Engine engine = Engine.TREE;
+    static int jitThreshold = 1000;
+    static boolean optimize = true;
+    private static boolean optimizerReport = false;
+    private static String profileOutput = null;
+    private static String metricsOutput = null;
+    private static AstCache astCache = null;
+    // Bounds how deeply Lox code can recurse, as programs run on a thread with a stack this large.
+    static long stackSize = 512L << 20;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("USAGE: lox <source>");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
+        String file = null;
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = parseEngine(arg.substring("--engine=".length()));
+            } else if (arg.startsWith("--jit-threshold=")) {
+                jitThreshold = parseThreshold(arg.substring("--jit-threshold=".length()));
+            } else if (arg.equals("--profile")) {
+                profileOutput = "lox-profile.folded";
+            } else if (arg.startsWith("--profile=")) {
+                profileOutput = arg.substring("--profile=".length());
+            } else if (arg.equals("--metrics")) {
+                Metrics.enable();
+            } else if (arg.startsWith("--metrics-file=")) {
+                metricsOutput = arg.substring("--metrics-file=".length());
+                Metrics.enable();
+            } else if (arg.equals("--ast-cache")) {
+                astCache = new AstCache(Paths.get(System.getProperty("user.home"), ".cache", "lox"));
+            } else if (arg.startsWith("--ast-cache=")) {
+                astCache = new AstCache(Paths.get(arg.substring("--ast-cache=".length())));
+            } else if (arg.startsWith("--output-flush=")) {
+                Output.use(new Output(parseFlush(arg.substring("--output-flush=".length())), 1 << 16));
+            } else if (arg.startsWith("--stack-size=")) {
+                stackSize = parseSize(arg.substring("--stack-size=".length()));
+            } else if (arg.equals("--no-optimize")) {
+                optimize = false;
+            } else if (arg.equals("--optimizer-report")) {
+                optimizerReport = true;
+            } else if (file == null && !arg.startsWith("--")) {
+                file = arg;
+            } else {
+                usage();
+            }
+        }
+        if (profileOutput != null && engine != Engine.TREE && engine != Engine.JIT) usage();
+        String source = file;
+        runWithStack(() -> {
+            if (source != null) {
+                runFile(source);
+            } else {
+                runPrompt();
+            }
+            return null;
+        });
+    }
+
+    // Runs the program on a thread of its own, whose stack can be made larger than the main thread's.
+    private static void runWithStack(Callable<Void> program) throws IOException {
+        FutureTask<Void> task = new FutureTask<>(program);
+        Thread thread = new Thread(null, task, "lox", stackSize);
+        thread.start();
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) throw cause;
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw new IllegalStateException(e.getCause());
         }
     }
 
+    private static Engine parseEngine(String name) {
+        for (Engine value : Engine.values()) {
+            if (value.name().equalsIgnoreCase(name)) return value;
+        }
+        usage();
+        return null;
+    }
+
+    private static Output.Flush parseFlush(String name) {
+        for (Output.Flush value : Output.Flush.values()) {
+            if (value.name().equalsIgnoreCase(name)) return value;
+        }
+        usage();
+        return null;
+    }
+
+    // A byte count, optionally followed by k, m or g.
+    private static long parseSize(String value) {
+        int shift = switch (value.isEmpty() ? ' ' : Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'k' -> 10;
+            case 'm' -> 20;
+            case 'g' -> 30;
+            default -> 0;
+        };
+        try {
+            return Long.parseLong(shift == 0 ? value : value.substring(0, value.length() - 1)) << shift;
+        } catch (NumberFormatException e) {
+            usage();
+            return -1;
+        }
+    }
+
+    private static int parseThreshold(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage();
+            return -1;
+        }
+    }
+
+    private static void usage() {
+        System.out.println("USAGE: lox [--engine=tree|closure|vm|jit] [--jit-threshold=N] [--no-optimize] [--optimizer-report]\n"
+                + "           [--profile[=<file>]] [--metrics] [--metrics-file=<file>]\n"
+                + "           [--ast-cache[=<dir>]] [--output-flush=line|size|exit] [--stack-size=<bytes>[k|m|g]]\n"
+                + "           <source>");
+        System.exit(64);
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
@@ -34,27 +157,119 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
+            run(line, engine);
+            hadError = false;
         }
     }
 
     private static void runFile(String file) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(file));
-        run(new String(bytes, Charset.defaultCharset()));
+        Profiler profiler = null;
+        if (profileOutput != null) {
+            profiler = new Profiler(1);
+            interpreter.setProfiler(profiler);
+        }
+        if (metricsOutput != null) Metrics.exportPeriodically(Paths.get(metricsOutput), 10);
+        Path path = Paths.get(file);
+        List<Stmt> stmts;
+        if (astCache != null) {
+            long start = System.nanoTime();
+            String key = AstCache.key(path);
+            stmts = astCache.load(key);
+            stage("load", start);
+            if (stmts == null) {
+                stmts = parse(path);
+                if (stmts != null) astCache.store(key, stmts);
+            }
+        } else {
+            stmts = parse(path);
+        }
+        if (stmts != null) {
+            // Only the program's run is sampled, not scanning and parsing it.
+            if (profiler != null) profiler.start();
+            run(stmts, engine);
+        }
+        if (profiler != null) {
+            profiler.stop();
+            profiler.writeFolded(Paths.get(profileOutput));
+            profiler.printTop(System.err, 10);
+        }
+        if (metricsOutput != null) Metrics.stopExport(Paths.get(metricsOutput));
         if (hadError) System.exit(65);
         if (hadRuntimeError) System.exit(70);
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scan();
-        Parser parser = new Parser(tokens);
+    private static List<Stmt> parse(Path path) throws IOException {
+        if (Charset.defaultCharset().equals(StandardCharsets.UTF_8)) return parse(Scanner.map(path));
+        try (Reader reader = Files.newBufferedReader(path, Charset.defaultCharset())) {
+            return parse(new Scanner(reader));
+        }
+    }
+
+    static void run(String source, Engine engine) {
+        List<Stmt> stmts = parse(new Scanner(source));
+        if (stmts != null) run(stmts, engine);
+    }
+
+    // The resolved statements, or null if there were errors. Tokens are scanned as the parser asks
+    // for them, so the parse stage includes scanning.
+    static List<Stmt> parse(Scanner scanner) {
+        long start = System.nanoTime();
+        Parser parser = new Parser(scanner);
         List<Stmt> stmts = parser.parse();
-        if (hadError) return;
-        Resolver resolver = new Resolver(interpreter);
+        start = stage("parse", start);
+        if (hadError) return null;
+        Resolver resolver = new Resolver();
         resolver.resolve(stmts);
-        if (hadError) return;
-        interpreter.interpret(stmts);
+        stage("resolve", start);
+        if (hadError) return null;
+        return stmts;
+    }
+
+    static void run(List<Stmt> stmts, Engine engine) {
+        long start = System.nanoTime();
+        if (optimize) {
+            Optimizer optimizer = new Optimizer();
+            stmts = optimizer.optimize(stmts);
+            start = stage("optimize", start);
+            if (optimizerReport) System.err.println("Optimizer removed " + optimizer.removed() + " nodes.");
+        }
+        execute(stmts, engine, start);
+    }
+
+    private static void execute(List<Stmt> stmts, Engine engine, long start) {
+        try {
+            switch (engine) {
+                case TREE -> {
+                    interpreter.setJitThreshold(-1);
+                    interpreter.interpret(stmts);
+                }
+                case JIT -> {
+                    interpreter.setJitThreshold(jitThreshold);
+                    interpreter.interpret(stmts);
+                }
+                case CLOSURE -> closureCompiler.interpret(stmts);
+                case VM -> {
+                    VmFunction script = new Compiler().compile(stmts);
+                    start = stage("compile", start);
+                    if (hadError) return;
+                    vm.setStackSize(stackSize);
+                    vm.interpret(script);
+                }
+            }
+        } catch (StackOverflowError e) {
+            // Engines that can report it at the call that overflowed already have.
+            Output.current().flush();
+            System.err.println("Stack overflow.");
+            hadRuntimeError = true;
+            Metrics.runtimeError();
+        }
+        stage("execute", start);
+    }
+
+    private static long stage(String name, long start) {
+        long now = System.nanoTime();
+        Metrics.recordStage(name, now - start);
+        return now;
     }
 
     public static void error(int line, String msg) {
@@ -70,12 +285,15 @@ public class Lox {
     }
 
     private static void report(int line, String where, String msg) {
+        Output.current().flush();
         System.err.println("[line " + line + "] Error" + where + ": " + msg);
         hadError = true;
     }
 
     public static void runtimeError(RuntimeError error) {
+        Output.current().flush();
         System.err.println(error.getMessage() + "\n [line " + error.getToken().getLine() + "]");
         hadRuntimeError = true;
+        Metrics.runtimeError();
     }
 }
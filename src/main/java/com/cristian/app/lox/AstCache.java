@@ -0,0 +1,534 @@
+package com.cristian.app.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Resolved syntax trees saved on disk, so running a script that hasn't changed skips scanning,
+ * parsing and resolving. Entries are named after the SHA-256 of the source, and start with the
+ * format version and that hash again, so an entry written by another version or for other source
+ * is never used. After the header come the distinct strings of the tree and then its nodes in
+ * prefix order, one tag byte each, with small numbers written as varints.
+ */
+public final class AstCache {
+    private static final int MAGIC = 0x4c4f5841;
+    private static final int VERSION = 3;
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The key of a source file: the SHA-256 of its bytes in hex.
+     */
+    public static String key(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The tree saved for the key, or null if there is none or it can't be used.
+     */
+    public List<Stmt> load(String key) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(directory.resolve(key + ".ast"));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            return new Reader(ByteBuffer.wrap(bytes)).read(key);
+        } catch (RuntimeException e) {
+            // A damaged entry is the same as a missing one.
+            return null;
+        }
+    }
+
+    /**
+     * Saves the tree for the key. The entry is written to a temporary file and moved in place, so
+     * another run never reads it half written.
+     */
+    public void store(String key, List<Stmt> statements) throws IOException {
+        Writer writer = new Writer();
+        writer.statements(statements);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(key);
+        writer.writeStrings(out);
+        writer.body.writeTo(out);
+        out.flush();
+
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temporary, bytes.toByteArray());
+        Files.move(temporary, directory.resolve(key + ".ast"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+        void writeStrings(DataOutputStream out) throws IOException {
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            varint(table, strings.size());
+            for (String string : strings.keySet()) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                varint(table, utf8.length);
+                table.write(utf8);
+            }
+            table.writeTo(out);
+        }
+
+        private void varint(int value) {
+            varint(body, value);
+        }
+
+        private static void varint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private void string(String value) {
+            varint(strings.computeIfAbsent(value, s -> strings.size()));
+        }
+
+        private void token(Token token) {
+            body.write(token.type.ordinal());
+            string(token.lexeme);
+            value(token.literal);
+            varint(token.line);
+        }
+
+        private void value(Object value) {
+            if (value == null) {
+                body.write(0);
+            } else if (value instanceof Boolean bool) {
+                body.write(bool ? 1 : 2);
+            } else if (value instanceof Double number) {
+                body.write(3);
+                long bits = Double.doubleToRawLongBits(number);
+                for (int shift = 56; shift >= 0; shift -= 8) body.write((int) (bits >>> shift));
+            } else {
+                body.write(4);
+                string((String) value);
+            }
+        }
+
+        // Depths start at -1 for globals.
+        private void resolved(int depth, int slot) {
+            varint(depth + 1);
+            varint(slot);
+        }
+
+        private void expression(Expr expr) {
+            if (expr == null) body.write(0);
+            else expr.accept(this);
+        }
+
+        private void expressions(List<Expr> expressions) {
+            varint(expressions.size());
+            expressions.forEach(this::expression);
+        }
+
+        private void statement(Stmt stmt) {
+            if (stmt == null) body.write(0);
+            else stmt.accept(this);
+        }
+
+        void statements(List<? extends Stmt> statements) {
+            varint(statements.size());
+            statements.forEach(this::statement);
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            body.write(1);
+            token(expr.identifier);
+            expression(expr.value);
+            resolved(expr.depth, expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            body.write(2);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            body.write(3);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            body.write(4);
+            expression(expr.callee);
+            token(expr.paren);
+            expressions(expr.arguments);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            body.write(5);
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            body.write(6);
+            value(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            body.write(7);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            body.write(8);
+            token(expr.identifier);
+            resolved(expr.depth, expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitClassExpr(Expr.Class expr) {
+            body.write(9);
+            token(expr.identifier);
+            expressions(expr.arguments);
+            resolved(expr.depth, expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            body.write(10);
+            expression(expr.object);
+            token(expr.identifier);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            body.write(11);
+            expression(expr.object);
+            token(expr.identifier);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            body.write(12);
+            token(expr.keyword);
+            resolved(expr.depth, expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            body.write(1);
+            statements(stmt.statements);
+            varint(stmt.locals);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            body.write(2);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            statement(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            body.write(3);
+            expression(stmt.condition);
+            statement(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            body.write(4);
+            token(stmt.breakToken);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            body.write(5);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            body.write(6);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            body.write(7);
+            token(stmt.name);
+            expression(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            body.write(8);
+            token(stmt.identifier);
+            expression(stmt.initializer);
+            body.write(stmt.reassigned ? 1 : 0);
+            varint(stmt.slot + 1);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            body.write(9);
+            token(stmt.identifier);
+            varint(stmt.params.size());
+            stmt.params.forEach(this::token);
+            statements(stmt.body);
+            varint(stmt.slot + 1);
+            varint(stmt.locals);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            body.write(10);
+            token(stmt.identifier);
+            statements(stmt.methods);
+            varint(stmt.slot + 1);
+            return null;
+        }
+    }
+
+    private static class Reader {
+        private static final TokenType[] types = TokenType.values();
+
+        private final ByteBuffer in;
+        private String[] strings;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Stmt> read(String key) {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            byte[] storedKey = new byte[in.getShort() & 0xffff];
+            in.get(storedKey);
+            if (!key.equals(new String(storedKey, StandardCharsets.UTF_8))) return null;
+            strings = new String[varint()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[varint()];
+                in.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            return statements();
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) return value;
+            }
+        }
+
+        private Token token() {
+            TokenType type = types[in.get()];
+            String lexeme = strings[varint()];
+            Object literal = value();
+            return new Token(type, lexeme, literal, varint());
+        }
+
+        private Object value() {
+            return switch (in.get()) {
+                case 0 -> null;
+                case 1 -> true;
+                case 2 -> false;
+                case 3 -> in.getDouble();
+                case 4 -> strings[varint()];
+                default -> throw new IllegalArgumentException("Bad value tag");
+            };
+        }
+
+        private List<Expr> expressions() {
+            int size = varint();
+            List<Expr> expressions = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) expressions.add(expression());
+            return expressions;
+        }
+
+        private List<Stmt> statements() {
+            int size = varint();
+            List<Stmt> statements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) statements.add(statement());
+            return statements;
+        }
+
+        private Expr expression() {
+            switch (in.get()) {
+                case 0 -> {
+                    return null;
+                }
+                case 1 -> {
+                    Expr.Assign expr = new Expr.Assign(token(), expression());
+                    expr.depth = varint() - 1;
+                    expr.slot = varint();
+                    return expr;
+                }
+                case 2 -> {
+                    return new Expr.Logical(expression(), token(), expression());
+                }
+                case 3 -> {
+                    return new Expr.Binary(expression(), token(), expression());
+                }
+                case 4 -> {
+                    return new Expr.Call(expression(), token(), expressions());
+                }
+                case 5 -> {
+                    return new Expr.Grouping(expression());
+                }
+                case 6 -> {
+                    return new Expr.Literal(value());
+                }
+                case 7 -> {
+                    return new Expr.Unary(token(), expression());
+                }
+                case 8 -> {
+                    Expr.Variable expr = new Expr.Variable(token());
+                    expr.depth = varint() - 1;
+                    expr.slot = varint();
+                    return expr;
+                }
+                case 9 -> {
+                    Expr.Class expr = new Expr.Class(token(), expressions());
+                    expr.depth = varint() - 1;
+                    expr.slot = varint();
+                    return expr;
+                }
+                case 10 -> {
+                    return new Expr.Get(expression(), token());
+                }
+                case 11 -> {
+                    return new Expr.Set(expression(), token(), expression());
+                }
+                case 12 -> {
+                    Expr.This expr = new Expr.This(token());
+                    expr.depth = varint() - 1;
+                    expr.slot = varint();
+                    return expr;
+                }
+                default -> throw new IllegalArgumentException("Bad expression tag");
+            }
+        }
+
+        private Stmt statement() {
+            switch (in.get()) {
+                case 0 -> {
+                    return null;
+                }
+                case 1 -> {
+                    Stmt.Block stmt = new Stmt.Block(statements());
+                    stmt.locals = varint();
+                    return stmt;
+                }
+                case 2 -> {
+                    return new Stmt.If(expression(), statement(), statement());
+                }
+                case 3 -> {
+                    return new Stmt.While(expression(), statement());
+                }
+                case 4 -> {
+                    return new Stmt.Break(token());
+                }
+                case 5 -> {
+                    return new Stmt.Expression(expression());
+                }
+                case 6 -> {
+                    return new Stmt.Print(expression());
+                }
+                case 7 -> {
+                    return new Stmt.Return(token(), expression());
+                }
+                case 8 -> {
+                    Stmt.Var stmt = new Stmt.Var(token(), expression());
+                    stmt.reassigned = in.get() != 0;
+                    stmt.slot = varint() - 1;
+                    return stmt;
+                }
+                case 9 -> {
+                    Token identifier = token();
+                    List<Token> params = new ArrayList<>();
+                    for (int i = varint(); i > 0; i--) params.add(token());
+                    Stmt.Function stmt = new Stmt.Function(identifier, params, statements());
+                    stmt.slot = varint() - 1;
+                    stmt.locals = varint();
+                    return stmt;
+                }
+                case 10 -> {
+                    Token identifier = token();
+                    List<Stmt.Function> methods = new ArrayList<>();
+                    for (Stmt method : statements()) methods.add((Stmt.Function) method);
+                    Stmt.Class stmt = new Stmt.Class(identifier, methods);
+                    stmt.slot = varint() - 1;
+                    return stmt;
+                }
+                default -> throw new IllegalArgumentException("Bad statement tag");
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.cristian.app.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Chunk {
+    byte[] code = new byte[64];
+    Token[] tokens = new Token[64];
+    int count = 0;
+    Object[] constants = new Object[0];
+    private final List<Object> constantList = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    void write(byte b, Token token) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            tokens = Arrays.copyOf(tokens, count * 2);
+        }
+        code[count] = b;
+        tokens[count] = token;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index != null) return index;
+        constantList.add(value);
+        constantIndexes.put(value, constantList.size() - 1);
+        return constantList.size() - 1;
+    }
+
+    void seal() {
+        code = Arrays.copyOf(code, count);
+        tokens = Arrays.copyOf(tokens, count);
+        constants = constantList.toArray();
+    }
+}
@@ -0,0 +1,20 @@
+package com.cristian.app.lox;
+
+import java.util.Map;
+
+public class ClosureClass {
+    final String identifier;
+    final Map<String, ClosureFunction> methods;
+
+    ClosureClass(String identifier, Map<String, ClosureFunction> methods) {
+        this.identifier = identifier;
+        this.methods = methods;
+    }
+
+    @Override
+    public String toString() {
+        return "LoxClass{" +
+                "identifier='" + identifier + '\'' +
+                '}';
+    }
+}
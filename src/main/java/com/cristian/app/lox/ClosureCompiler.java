@@ -0,0 +1,532 @@
+package com.cristian.app.lox;
+
+import com.cristian.app.Lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Walks the resolved AST once and links it into a tree of Java lambdas specialized for each node,
+ * so running the program no longer double-dispatches through the visitors. Runtime frames are the
+ * same slot {@link Environment}s the {@link Interpreter} uses; globals are bound to cells at
+ * compile time.
+ */
+public class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Eval>, Stmt.Visitor<ClosureCompiler.Exec> {
+    interface Eval {
+        Object eval(Environment environment);
+    }
+
+    // Completes like a statement in the Interpreter: null, Interpreter.BREAK, Interpreter.RETURN_NIL
+    // or the returned value.
+    interface Exec {
+        Object exec(Environment environment);
+    }
+
+    private static class Global {
+        final String name;
+        Object value;
+        boolean defined = false;
+
+        Global(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Environment globalEnvironment = new Environment();
+    private final Map<String, Global> globals = new HashMap<>();
+
+    public ClosureCompiler() {
+        for (NativeFunction function : Natives.standard) {
+            Global global = globals.computeIfAbsent(function.name, Global::new);
+            global.value = function;
+            global.defined = true;
+        }
+    }
+
+    public void interpret(List<Stmt> statements) {
+        Exec program = compileBlock(statements);
+        try {
+            program.exec(globalEnvironment);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            Output.current().flush();
+        }
+    }
+
+    private Eval compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Exec compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Exec compileBlock(List<Stmt> statements) {
+        Exec[] body = statements.stream().map(this::compile).toArray(Exec[]::new);
+        if (body.length == 1) return body[0];
+        return environment -> {
+            for (Exec stmt : body) {
+                Object completion = stmt.exec(environment);
+                if (completion != null) return completion;
+            }
+            return null;
+        };
+    }
+
+    private Global global(Token identifier) {
+        return globals.computeIfAbsent(identifier.lexeme, Global::new);
+    }
+
+    private Eval variable(Token identifier, int depth, int slot) {
+        if (depth == 0) return environment -> environment.slots[slot];
+        if (depth == 1) return environment -> environment.outer.slots[slot];
+        if (depth > 1) return environment -> environment.getAt(depth, slot);
+        Global global = global(identifier);
+        return environment -> {
+            if (!global.defined) {
+                throw new RuntimeError(identifier, "Undefined identifier '" + global.name + "'.");
+            }
+            return global.value;
+        };
+    }
+
+    private Exec define(Token identifier, int slot, Eval value) {
+        if (slot != -1) {
+            return environment -> {
+                environment.define(slot, value.eval(environment));
+                return null;
+            };
+        }
+        Global global = global(identifier);
+        return environment -> {
+            global.value = value.eval(environment);
+            global.defined = true;
+            return null;
+        };
+    }
+
+    private static int localSlot(Expr expr) {
+        if (expr instanceof Expr.Variable variable && variable.depth == 0) return variable.slot;
+        return -1;
+    }
+
+    private static Double numberLiteral(Expr expr) {
+        while (expr instanceof Expr.Grouping grouping) expr = grouping.expression;
+        if (expr instanceof Expr.Literal literal && literal.value instanceof Double number) return number;
+        return null;
+    }
+
+    private static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double l && right instanceof Double r) return l + r;
+        if (left instanceof CharSequence l && right instanceof CharSequence r) return LoxString.concat(l, r);
+        throw new RuntimeError(operator, "Operands must be String or Numbers");
+    }
+
+    private static void checkNumbers(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(operator, "Operands must be both Numbers");
+    }
+
+    private static double number(Object left, Token operator) {
+        if (left instanceof Double number) return number;
+        throw new RuntimeError(operator, "Operands must be both Numbers");
+    }
+
+    private static Object[] arguments(Eval[] arguments, Environment environment) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].eval(environment);
+        }
+        return values;
+    }
+
+    @Override
+    public Eval visitAssignExpr(Expr.Assign expr) {
+        Eval value = compile(expr.value);
+        int depth = expr.depth;
+        int slot = expr.slot;
+        if (depth == 0) {
+            return environment -> environment.slots[slot] = value.eval(environment);
+        } else if (depth == 1) {
+            return environment -> environment.outer.slots[slot] = value.eval(environment);
+        } else if (depth > 1) {
+            return environment -> {
+                Object result = value.eval(environment);
+                environment.assignAt(depth, slot, result);
+                return result;
+            };
+        }
+        Global global = global(expr.identifier);
+        Token identifier = expr.identifier;
+        return environment -> {
+            Object result = value.eval(environment);
+            if (!global.defined) {
+                throw new RuntimeError(identifier, "Undefined variable '" + global.name + "'.");
+            }
+            global.value = result;
+            return result;
+        };
+    }
+
+    @Override
+    public Eval visitLogicalExpr(Expr.Logical expr) {
+        Eval left = compile(expr.left);
+        Eval right = compile(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return environment -> {
+                Object value = left.eval(environment);
+                return Interpreter.isTruthy(value) ? value : right.eval(environment);
+            };
+        }
+        return environment -> {
+            Object value = left.eval(environment);
+            return !Interpreter.isTruthy(value) ? value : right.eval(environment);
+        };
+    }
+
+    @Override
+    public Eval visitBinaryExpr(Expr.Binary expr) {
+        Eval left = compile(expr.left);
+        Eval right = compile(expr.right);
+        Token operator = expr.operator;
+        Double constant = numberLiteral(expr.right);
+        int leftSlot = localSlot(expr.left);
+        int rightSlot = localSlot(expr.right);
+        switch (operator.type) {
+            case PLUS -> {
+                if (leftSlot != -1 && rightSlot != -1) {
+                    return environment -> add(environment.slots[leftSlot], environment.slots[rightSlot], operator);
+                }
+                if (constant != null) {
+                    double c = constant;
+                    return environment -> {
+                        Object value = left.eval(environment);
+                        if (value instanceof Double number) return number + c;
+                        throw new RuntimeError(operator, "Operands must be String or Numbers");
+                    };
+                }
+                return environment -> add(left.eval(environment), right.eval(environment), operator);
+            }
+            case MINUS -> {
+                if (constant != null) {
+                    double c = constant;
+                    return environment -> number(left.eval(environment), operator) - c;
+                }
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    return (Double) l - (Double) r;
+                };
+            }
+            case STAR -> {
+                if (constant != null) {
+                    double c = constant;
+                    return environment -> number(left.eval(environment), operator) * c;
+                }
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    return (Double) l * (Double) r;
+                };
+            }
+            case SLASH -> {
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    if ((Double) r == 0) throw new RuntimeError(operator, "Can't divide by zero.");
+                    return (Double) l / (Double) r;
+                };
+            }
+            case LESS -> {
+                if (constant != null) {
+                    double c = constant;
+                    return environment -> number(left.eval(environment), operator) < c;
+                }
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    return (Double) l < (Double) r;
+                };
+            }
+            case LESS_EQUAL -> {
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    return (Double) l <= (Double) r;
+                };
+            }
+            case GREATER -> {
+                if (constant != null) {
+                    double c = constant;
+                    return environment -> number(left.eval(environment), operator) > c;
+                }
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    return (Double) l > (Double) r;
+                };
+            }
+            case GREATER_EQUAL -> {
+                return environment -> {
+                    Object l = left.eval(environment);
+                    Object r = right.eval(environment);
+                    checkNumbers(l, r, operator);
+                    return (Double) l >= (Double) r;
+                };
+            }
+            case EQUAL_EQUAL -> {
+                return environment -> Interpreter.isEqual(left.eval(environment), right.eval(environment));
+            }
+            case BANG_EQUAL -> {
+                return environment -> !Interpreter.isEqual(left.eval(environment), right.eval(environment));
+            }
+        }
+        return environment -> {
+            left.eval(environment);
+            right.eval(environment);
+            return null;
+        };
+    }
+
+    @Override
+    public Eval visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) return invokeMethod(expr, get);
+        Eval callee = compile(expr.callee);
+        Eval[] arguments = expr.arguments.stream().map(this::compile).toArray(Eval[]::new);
+        Token paren = expr.paren;
+        return environment -> {
+            Object function = callee.eval(environment);
+            return call(function, arguments(arguments, environment), paren);
+        };
+    }
+
+    // Only closure and native functions can be called here: classes are instantiated with new, and
+    // the other engines' functions never reach this one.
+    private static Object call(Object function, Object[] arguments, Token paren) {
+        if (!(function instanceof ClosureFunction) && !(function instanceof NativeFunction)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxCallable callable = (LoxCallable) function;
+        if (arguments.length != callable.arity()) {
+            throw new RuntimeError(paren, "Expected " + callable.arity() + " arguments but got "
+                    + arguments.length + ".");
+        }
+        if (callable instanceof ClosureFunction closure) return closure.invoke(arguments);
+        return ((NativeFunction) callable).call(Arrays.asList(arguments), paren);
+    }
+
+    // obj.name(...) invokes the method on obj without binding it first.
+    private Eval invokeMethod(Expr.Call expr, Expr.Get get) {
+        Eval object = compile(get.object);
+        Eval[] arguments = expr.arguments.stream().map(this::compile).toArray(Eval[]::new);
+        Token identifier = get.identifier;
+        Token paren = expr.paren;
+        return environment -> {
+            if (!(object.eval(environment) instanceof ClosureInstance instance)) {
+                throw new RuntimeError(identifier, "Only instances have properties.");
+            }
+            ClosureFunction method = instance.method(identifier);
+            Object[] values = arguments(arguments, environment);
+            if (method == null) return call(instance.get(identifier), values, paren);
+            if (values.length != method.arity()) {
+                throw new RuntimeError(paren, "Expected " + method.arity() + " arguments but got "
+                        + values.length + ".");
+            }
+            return method.invoke(instance, values);
+        };
+    }
+
+    @Override
+    public Eval visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Eval visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return environment -> value;
+    }
+
+    @Override
+    public Eval visitUnaryExpr(Expr.Unary expr) {
+        Eval right = compile(expr.right);
+        Token operator = expr.operator;
+        if (operator.type == TokenType.BANG) {
+            return environment -> !Interpreter.isTruthy(right.eval(environment));
+        }
+        return environment -> {
+            Object value = right.eval(environment);
+            if (value instanceof Double number) return -number;
+            throw new RuntimeError(operator, "Operand must be a number");
+        };
+    }
+
+    @Override
+    public Eval visitVariableExpr(Expr.Variable expr) {
+        return variable(expr.identifier, expr.depth, expr.slot);
+    }
+
+    @Override
+    public Eval visitClassExpr(Expr.Class expr) {
+        Eval klass = variable(expr.identifier, expr.depth, expr.slot);
+        Eval[] arguments = expr.arguments.stream().map(this::compile).toArray(Eval[]::new);
+        Token identifier = expr.identifier;
+        return environment -> {
+            ClosureInstance instance = new ClosureInstance((ClosureClass) klass.eval(environment));
+            try {
+                ClosureFunction constructor = instance.findMethod(identifier);
+                Object[] values = arguments(arguments, environment);
+                if (values.length != constructor.arity()) {
+                    throw new RuntimeError(identifier, "Class constructor expected " + constructor.arity()
+                            + " arguments but got " + values.length + " instead.");
+                }
+                constructor.invoke(instance, values);
+            } catch (RuntimeError ignored) {
+            }
+            return instance;
+        };
+    }
+
+    @Override
+    public Eval visitGetExpr(Expr.Get expr) {
+        Eval object = compile(expr.object);
+        Token identifier = expr.identifier;
+        return environment -> {
+            if (object.eval(environment) instanceof ClosureInstance instance) return instance.get(identifier);
+            throw new RuntimeError(identifier, "Only instances have properties.");
+        };
+    }
+
+    @Override
+    public Eval visitSetExpr(Expr.Set expr) {
+        Eval object = compile(expr.object);
+        Eval value = compile(expr.value);
+        Token identifier = expr.identifier;
+        return environment -> {
+            if (!(object.eval(environment) instanceof ClosureInstance instance)) {
+                throw new RuntimeError(identifier, "Only instances have fields");
+            }
+            Object result = value.eval(environment);
+            instance.set(identifier, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Eval visitThisExpr(Expr.This expr) {
+        return variable(expr.keyword, expr.depth, expr.slot);
+    }
+
+    @Override
+    public Exec visitBlockStmt(Stmt.Block stmt) {
+        Exec body = compileBlock(stmt.statements);
+        if (stmt.locals == 0) return body;
+        int locals = stmt.locals;
+        return environment -> body.exec(new Environment(environment, locals));
+    }
+
+    @Override
+    public Exec visitIfStmt(Stmt.If stmt) {
+        Eval condition = compile(stmt.condition);
+        Exec thenBranch = compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            return environment -> Interpreter.isTruthy(condition.eval(environment))
+                    ? thenBranch.exec(environment) : null;
+        }
+        Exec elseBranch = compile(stmt.elseBranch);
+        return environment -> Interpreter.isTruthy(condition.eval(environment))
+                ? thenBranch.exec(environment) : elseBranch.exec(environment);
+    }
+
+    @Override
+    public Exec visitWhileStmt(Stmt.While stmt) {
+        Eval condition = compile(stmt.condition);
+        Exec body = compile(stmt.body);
+        return environment -> {
+            while (Interpreter.isTruthy(condition.eval(environment))) {
+                Object completion = body.exec(environment);
+                if (completion == Interpreter.BREAK) break;
+                if (completion != null) return completion;
+            }
+            return null;
+        };
+    }
+
+    @Override
+    public Exec visitBreakStmt(Stmt.Break stmt) {
+        return environment -> Interpreter.BREAK;
+    }
+
+    @Override
+    public Exec visitExpressionStmt(Stmt.Expression stmt) {
+        Eval expression = compile(stmt.expression);
+        return environment -> {
+            expression.eval(environment);
+            return null;
+        };
+    }
+
+    @Override
+    public Exec visitPrintStmt(Stmt.Print stmt) {
+        Eval expression = compile(stmt.expression);
+        return environment -> {
+            Output.print(expression.eval(environment));
+            return null;
+        };
+    }
+
+    @Override
+    public Exec visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.initializer == null) return environment -> Interpreter.RETURN_NIL;
+        Eval value = compile(stmt.initializer);
+        return environment -> {
+            Object result = value.eval(environment);
+            return result == null ? Interpreter.RETURN_NIL : result;
+        };
+    }
+
+    @Override
+    public Exec visitVarStmt(Stmt.Var stmt) {
+        Eval initializer = stmt.initializer != null ? compile(stmt.initializer) : environment -> null;
+        return define(stmt.identifier, stmt.slot, initializer);
+    }
+
+    @Override
+    public Exec visitFunctionStmt(Stmt.Function stmt) {
+        Exec body = compileBlock(stmt.body);
+        String name = stmt.identifier.lexeme;
+        int arity = stmt.params.size();
+        int locals = stmt.locals;
+        return define(stmt.identifier, stmt.slot,
+                environment -> new ClosureFunction(name, arity, locals, body, environment));
+    }
+
+    @Override
+    public Exec visitClassStmt(Stmt.Class stmt) {
+        Map<String, Exec> bodies = new HashMap<>();
+        Map<String, Stmt.Function> declarations = new HashMap<>();
+        stmt.methods.forEach(method -> {
+            bodies.put(method.identifier.lexeme, compileBlock(method.body));
+            declarations.put(method.identifier.lexeme, method);
+        });
+        String name = stmt.identifier.lexeme;
+        return define(stmt.identifier, stmt.slot, environment -> {
+            Map<String, ClosureFunction> methods = new HashMap<>();
+            bodies.forEach((method, body) -> {
+                Stmt.Function declaration = declarations.get(method);
+                methods.put(method, new ClosureFunction(method, declaration.params.size(), declaration.locals,
+                        body, environment));
+            });
+            return new ClosureClass(name, methods);
+        });
+    }
+}
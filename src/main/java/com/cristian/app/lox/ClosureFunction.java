@@ -0,0 +1,60 @@
+package com.cristian.app.lox;
+
+import java.util.List;
+
+public class ClosureFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+    private final int locals;
+    private final ClosureCompiler.Exec body;
+    private final Environment closure;
+    // Bound methods take their receiver in slot 0 of the call environment.
+    private final ClosureInstance receiver;
+
+    ClosureFunction(String name, int arity, int locals, ClosureCompiler.Exec body, Environment closure) {
+        this(name, arity, locals, body, closure, null);
+    }
+
+    private ClosureFunction(String name, int arity, int locals, ClosureCompiler.Exec body, Environment closure,
+                            ClosureInstance receiver) {
+        this.name = name;
+        this.arity = arity;
+        this.locals = locals;
+        this.body = body;
+        this.closure = closure;
+        this.receiver = receiver;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + this.name + ">";
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return invoke(arguments.toArray());
+    }
+
+    Object invoke(Object[] arguments) {
+        return invoke(receiver, arguments);
+    }
+
+    Object invoke(ClosureInstance receiver, Object[] arguments) {
+        if (Metrics.enabled) Metrics.calls.increment();
+        Environment environment = new Environment(closure, locals);
+        if (receiver != null) environment.define(receiver);
+        for (Object argument : arguments) {
+            environment.define(argument);
+        }
+        return Interpreter.returnValue(body.exec(environment));
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    ClosureFunction bind(ClosureInstance instance) {
+        return new ClosureFunction(name, arity, locals, body, closure, instance);
+    }
+}
@@ -0,0 +1,47 @@
+package com.cristian.app.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ClosureInstance {
+    final ClosureClass klass;
+    private final Map<String, Object> fields = new HashMap<>();
+
+    ClosureInstance(ClosureClass klass) {
+        this.klass = klass;
+        if (Metrics.enabled) Metrics.instances.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "LoxInstance{" +
+                "klass=" + klass +
+                '}';
+    }
+
+    Object get(Token identifier) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        if (fields.containsKey(identifier.lexeme)) {
+            return fields.get(identifier.lexeme);
+        }
+        return findMethod(identifier).bind(this);
+    }
+
+    // The method a call obj.name(...) invokes on this instance, or null when a field has the name.
+    ClosureFunction method(Token identifier) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        if (fields.containsKey(identifier.lexeme)) return null;
+        return findMethod(identifier);
+    }
+
+    ClosureFunction findMethod(Token identifier) {
+        ClosureFunction method = klass.methods.get(identifier.lexeme);
+        if (method != null) return method;
+        throw new RuntimeError(identifier, "Undefined property '" + identifier.lexeme + "'.");
+    }
+
+    void set(Token identifier, Object value) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        fields.put(identifier.lexeme, value);
+    }
+}
@@ -0,0 +1,539 @@
+package com.cristian.app.lox;
+
+import com.cristian.app.Lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a resolved program into bytecode for the {@link VM}. Locals live in stack slots of
+ * their function's frame and variables captured by inner functions are reached through upvalues,
+ * so blocks don't need runtime environments of their own. Variables are found through the depth
+ * and slot the {@link Resolver} gave them, not by name.
+ */
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_SLOTS = 256;
+
+    private static class Local {
+        final int depth;
+        boolean captured = false;
+
+        Local(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    // A scope of the resolver: the function whose frame holds its variables, and the local each of
+    // its slots was given in that frame.
+    private static class Scope {
+        final FunctionState function;
+        final int[] locals;
+
+        Scope(FunctionState function, int size) {
+            this.function = function;
+            this.locals = new int[size];
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class Loop {
+        final Loop enclosing;
+        final int scopeDepth;
+        final List<Integer> breaks = new ArrayList<>();
+
+        Loop(Loop enclosing, int scopeDepth) {
+            this.enclosing = enclosing;
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final VmFunction function;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        Loop loop = null;
+
+        FunctionState(FunctionState enclosing, VmFunction function) {
+            this.enclosing = enclosing;
+            this.function = function;
+        }
+    }
+
+    private FunctionState current;
+    private final List<Scope> scopes = new ArrayList<>();
+    private int line = 0;
+
+    public VmFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new VmFunction(null));
+        current.locals.add(new Local(0));
+        statements.forEach(this::compile);
+        emit(OpCode.NIL, null);
+        emit(OpCode.RETURN, null);
+        current.function.chunk.seal();
+        return current.function;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    private void emit(byte b, Token token) {
+        if (token != null) line = token.line;
+        chunk().write(b, token);
+    }
+
+    private void emitShort(int value, Token token) {
+        emit((byte) ((value >> 8) & 0xff), token);
+        emit((byte) (value & 0xff), token);
+    }
+
+    private void emitConstant(Object value) {
+        emit(OpCode.CONSTANT, null);
+        emitShort(constant(value), null);
+    }
+
+    private int constant(Object value) {
+        int index = chunk().addConstant(value);
+        if (index > 0xffff) Lox.error(line, "Too many constants in one function.");
+        return index;
+    }
+
+    private int emitJump(byte instruction, Token token) {
+        emit(instruction, token);
+        emitShort(0xffff, token);
+        return chunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = chunk().count - offset - 2;
+        if (jump > 0xffff) Lox.error(line, "Too much code to jump over.");
+        chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP, null);
+        int offset = chunk().count - loopStart + 2;
+        if (offset > 0xffff) Lox.error(line, "Loop body too large.");
+        emitShort(offset, null);
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            Local local = locals.remove(locals.size() - 1);
+            emit(local.captured ? OpCode.CLOSE_UPVALUE : OpCode.POP, null);
+        }
+    }
+
+    // Gives the variable in the given slot of the innermost scope the next local of the frame.
+    private void addLocal(Token identifier, int slot) {
+        if (current.locals.size() == MAX_SLOTS) {
+            Lox.error(identifier, "Too many local variables in function.");
+            return;
+        }
+        scopes.get(scopes.size() - 1).locals[slot] = current.locals.size();
+        current.locals.add(new Local(current.scopeDepth));
+    }
+
+    private void defineVariable(Token identifier, int slot) {
+        if (current.scopeDepth > 0) {
+            addLocal(identifier, slot);
+        } else {
+            emit(OpCode.DEFINE_GLOBAL, identifier);
+            emitShort(constant(identifier.lexeme), identifier);
+        }
+    }
+
+    // The upvalue through which the function reaches the local of an enclosing function.
+    private int resolveUpvalue(FunctionState state, FunctionState owner, int local) {
+        if (state.enclosing == owner) {
+            owner.locals.get(local).captured = true;
+            return addUpvalue(state, local, true);
+        }
+        return addUpvalue(state, resolveUpvalue(state.enclosing, owner, local), false);
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+        if (state.upvalues.size() == MAX_SLOTS) {
+            Lox.error(line, "Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        state.function.upvalueCount = state.upvalues.size();
+        return state.upvalues.size() - 1;
+    }
+
+    private void namedVariable(Token identifier, int depth, int slot, boolean assign) {
+        if (depth == -1) {
+            emit(assign ? OpCode.SET_GLOBAL : OpCode.GET_GLOBAL, identifier);
+            emitShort(constant(identifier.lexeme), identifier);
+            return;
+        }
+        Scope scope = scopes.get(scopes.size() - 1 - depth);
+        int arg = scope.locals[slot];
+        byte op;
+        if (scope.function == current) {
+            op = assign ? OpCode.SET_LOCAL : OpCode.GET_LOCAL;
+        } else {
+            arg = resolveUpvalue(current, scope.function, arg);
+            op = assign ? OpCode.SET_UPVALUE : OpCode.GET_UPVALUE;
+        }
+        emit(op, identifier);
+        emit((byte) arg, identifier);
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        FunctionState state = new FunctionState(current, new VmFunction(stmt.identifier.lexeme));
+        current = state;
+        beginScope();
+        Scope scope = new Scope(state, stmt.locals);
+        scopes.add(scope);
+        // Local 0 of the frame holds the function, or the receiver of a method, which the resolver
+        // puts in slot 0 of the method's scope ahead of the parameters.
+        current.locals.add(new Local(current.scopeDepth));
+        int slot = 0;
+        if (type != FunctionType.FUNCTION) scope.locals[slot++] = 0;
+        for (Token param : stmt.params) {
+            state.function.arity++;
+            addLocal(param, slot++);
+        }
+        stmt.body.forEach(this::compile);
+        emit(OpCode.NIL, null);
+        emit(OpCode.RETURN, null);
+        state.function.chunk.seal();
+        scopes.remove(scopes.size() - 1);
+        current = state.enclosing;
+
+        emit(OpCode.CLOSURE, stmt.identifier);
+        emitShort(constant(state.function), stmt.identifier);
+        for (Upvalue upvalue : state.upvalues) {
+            emit((byte) (upvalue.isLocal ? 1 : 0), stmt.identifier);
+            emit((byte) upvalue.index, stmt.identifier);
+        }
+    }
+
+    private void arguments(List<Expr> arguments, Token token) {
+        if (arguments.size() >= MAX_SLOTS) {
+            Lox.error(token, "Can't have more than 255 arguments.");
+        }
+        arguments.forEach(this::compile);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        namedVariable(expr.identifier, expr.depth, expr.slot, true);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE, expr.operator);
+            int endJump = emitJump(OpCode.JUMP, expr.operator);
+            patchJump(elseJump);
+            emit(OpCode.POP, expr.operator);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE, expr.operator);
+            emit(OpCode.POP, expr.operator);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        Token operator = expr.operator;
+        switch (operator.type) {
+            case PLUS -> emit(OpCode.ADD, operator);
+            case MINUS -> emit(OpCode.SUBTRACT, operator);
+            case STAR -> emit(OpCode.MULTIPLY, operator);
+            case SLASH -> emit(OpCode.DIVIDE, operator);
+            case LESS -> emit(OpCode.LESS, operator);
+            case LESS_EQUAL -> emit(OpCode.LESS_EQUAL, operator);
+            case GREATER -> emit(OpCode.GREATER, operator);
+            case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL, operator);
+            case EQUAL_EQUAL -> emit(OpCode.EQUAL, operator);
+            case BANG_EQUAL -> {
+                emit(OpCode.EQUAL, operator);
+                emit(OpCode.NOT, operator);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            compile(get.object);
+            arguments(expr.arguments, expr.paren);
+            emit(OpCode.INVOKE, get.identifier);
+            emitShort(constant(get.identifier.lexeme), get.identifier);
+            emit((byte) expr.arguments.size(), expr.paren);
+            return null;
+        }
+        compile(expr.callee);
+        arguments(expr.arguments, expr.paren);
+        emit(OpCode.CALL, expr.paren);
+        emit((byte) expr.arguments.size(), expr.paren);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL, null);
+        } else if (expr.value instanceof Boolean b) {
+            emit(b ? OpCode.TRUE : OpCode.FALSE, null);
+        } else {
+            emitConstant(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        if (expr.operator.type == TokenType.BANG) {
+            emit(OpCode.NOT, expr.operator);
+        } else if (expr.operator.type == TokenType.MINUS) {
+            emit(OpCode.NEGATE, expr.operator);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.identifier, expr.depth, expr.slot, false);
+        return null;
+    }
+
+    @Override
+    public Void visitClassExpr(Expr.Class expr) {
+        namedVariable(expr.identifier, expr.depth, expr.slot, false);
+        // Errors from here until the constructor returns are dropped, and execution goes on after
+        // the NEW with the instance, as in the tree walker. Without a constructor the arguments are
+        // skipped too.
+        int resume = emitJump(OpCode.BEGIN_NEW, expr.identifier);
+        emitShort(constant(expr.identifier.lexeme), expr.identifier);
+        arguments(expr.arguments, expr.identifier);
+        emit(OpCode.NEW, expr.identifier);
+        emitShort(constant(expr.identifier.lexeme), expr.identifier);
+        emit((byte) expr.arguments.size(), expr.identifier);
+        patchJump(resume);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        emit(OpCode.GET_PROPERTY, expr.identifier);
+        emitShort(constant(expr.identifier.lexeme), expr.identifier);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        emit(OpCode.SET_PROPERTY, expr.identifier);
+        emitShort(constant(expr.identifier.lexeme), expr.identifier);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        namedVariable(expr.keyword, expr.depth, expr.slot, false);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals == 0) {
+            stmt.statements.forEach(this::compile);
+            return null;
+        }
+        beginScope();
+        scopes.add(new Scope(current, stmt.locals));
+        stmt.statements.forEach(this::compile);
+        scopes.remove(scopes.size() - 1);
+        endScope();
+        return null;
+    }
+
+    // A function declared as the branch of an if or the body of a loop runs zero or many times, so
+    // its local is pushed up front and the declaration assigns to it. Returns the local, or -1.
+    private int reserve(Stmt branch) {
+        if (!(branch instanceof Stmt.Function function) || current.scopeDepth == 0) return -1;
+        emit(OpCode.NIL, function.identifier);
+        addLocal(function.identifier, function.slot);
+        return current.locals.size() - 1;
+    }
+
+    private void branch(Stmt branch, int local) {
+        if (local == -1) {
+            compile(branch);
+            return;
+        }
+        Token identifier = ((Stmt.Function) branch).identifier;
+        function((Stmt.Function) branch, FunctionType.FUNCTION);
+        emit(OpCode.SET_LOCAL, identifier);
+        emit((byte) local, identifier);
+        emit(OpCode.POP, identifier);
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        int thenLocal = reserve(stmt.thenBranch);
+        int elseLocal = reserve(stmt.elseBranch);
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE, null);
+        emit(OpCode.POP, null);
+        branch(stmt.thenBranch, thenLocal);
+        int elseJump = emitJump(OpCode.JUMP, null);
+        patchJump(thenJump);
+        emit(OpCode.POP, null);
+        if (stmt.elseBranch != null) branch(stmt.elseBranch, elseLocal);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int bodyLocal = reserve(stmt.body);
+        Loop loop = new Loop(current.loop, current.scopeDepth);
+        current.loop = loop;
+        int loopStart = chunk().count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE, null);
+        emit(OpCode.POP, null);
+        branch(stmt.body, bodyLocal);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        emit(OpCode.POP, null);
+        loop.breaks.forEach(this::patchJump);
+        current.loop = loop.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        Loop loop = current.loop;
+        if (loop == null) {
+            Lox.error(stmt.breakToken, "Can't break outside loop.");
+            return null;
+        }
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth <= loop.scopeDepth) break;
+            emit(local.captured ? OpCode.CLOSE_UPVALUE : OpCode.POP, stmt.breakToken);
+        }
+        loop.breaks.add(emitJump(OpCode.JUMP, stmt.breakToken));
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP, null);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT, null);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL, stmt.name);
+        }
+        emit(OpCode.RETURN, stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL, stmt.identifier);
+        }
+        defineVariable(stmt.identifier, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        if (current.scopeDepth > 0) {
+            addLocal(stmt.identifier, stmt.slot);
+            function(stmt, FunctionType.FUNCTION);
+        } else {
+            function(stmt, FunctionType.FUNCTION);
+            defineVariable(stmt.identifier, stmt.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        emit(OpCode.CLASS, stmt.identifier);
+        emitShort(constant(stmt.identifier.lexeme), stmt.identifier);
+        if (current.scopeDepth > 0) addLocal(stmt.identifier, stmt.slot);
+        stmt.methods.forEach(method -> {
+            FunctionType type = method.identifier.lexeme.equals(stmt.identifier.lexeme)
+                    ? FunctionType.CONSTRUCTOR : FunctionType.METHOD;
+            function(method, type);
+            emit(OpCode.METHOD, method.identifier);
+            emitShort(constant(method.identifier.lexeme), method.identifier);
+        });
+        if (current.scopeDepth == 0) defineVariable(stmt.identifier, stmt.slot);
+        return null;
+    }
+}
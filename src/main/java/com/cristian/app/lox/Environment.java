@@ -1,34 +1,52 @@
 package com.cristian.app.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Set;
 
+/**
+ * Runtime storage for variables. The global environment keeps its values by name, every other
+ * environment is a flat frame of slots whose indexes are assigned by the {@link Resolver}.
+ * Parameters are defined in order into the first slots, declarations into the slot resolved for them.
+ */
 public class Environment {
     Environment outer;
-    private final HashMap<String, Object> values = new HashMap<>();
+    private final HashMap<String, Object> values;
+    Object[] slots;
+    private int size = 0;
 
     public Environment() {
         this.outer = null;
+        this.values = new HashMap<>();
+        this.slots = new Object[0];
     }
 
-    public Environment(Environment outer) {
+    /**
+     * A frame with as many slots as the resolver counted locals in its scope.
+     */
+    public Environment(Environment outer, int size) {
+        if (Metrics.enabled) Metrics.environments.increment();
         this.outer = outer;
+        this.values = null;
+        this.slots = new Object[size];
     }
 
-
     public void define(String identifier, Object value) {
         values.put(identifier, value);
     }
 
+    public void define(Object value) {
+        slots[size++] = value;
+    }
+
+    public void define(int slot, Object value) {
+        slots[slot] = value;
+    }
+
     public void assign(Token identifier, Object value) {
         if (values.containsKey(identifier.lexeme)) {
             values.put(identifier.lexeme, value);
             return;
         }
-        if (this.outer != null) {
-            outer.assign(identifier, value);
-            return;
-        }
         throw new RuntimeError(identifier, "Undefined variable '" + identifier.lexeme + "'.");
     }
 
@@ -40,7 +58,7 @@ public class Environment {
         }
         return "Environment{" +
                 "outer=" + outerString +
-                ", values=" + values +
+                ", values=" + (values != null ? values : Arrays.toString(slots)) +
                 '}';
     }
 
@@ -48,17 +66,14 @@ public class Environment {
         if (values.containsKey(identifier.lexeme)) {
             return values.get(identifier.lexeme);
         }
-        if (this.outer != null) {
-            return outer.get(identifier);
-        }
         throw new RuntimeError(identifier, "Undefined identifier '" + identifier.lexeme + "'.");
     }
 
-    public Object getAt(Integer distance, String name) {
-        return ancestor(distance).values.get(name);
+    public Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
     }
 
-    private Environment ancestor(Integer distance) {
+    private Environment ancestor(int distance) {
         Environment environment = this;
         for (int i = 0; i < distance; i++) {
             environment = environment.outer;
@@ -66,7 +81,7 @@ public class Environment {
         return environment;
     }
 
-    public void assignAt(Integer distance, Token identifier, Object value) {
-        ancestor(distance).values.put(identifier.lexeme, value);
+    public void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
     }
 }
@@ -39,6 +39,8 @@ public abstract class Expr {
 
         final  Token identifier;
         final  Expr value;
+        int depth = -1;
+        int slot;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -73,6 +75,7 @@ public abstract class Expr {
         final  Expr left;
         final  Token operator;
         final  Expr right;
+        boolean nonNumeric;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -144,6 +147,8 @@ public abstract class Expr {
         }
 
         final  Token identifier;
+        int depth = -1;
+        int slot;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -159,6 +164,8 @@ public abstract class Expr {
 
         final  Token identifier;
         final  List<Expr> arguments;
+        int depth = -1;
+        int slot;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -174,6 +181,7 @@ public abstract class Expr {
 
         final  Expr object;
         final  Token identifier;
+        PropertyCache cache = new PropertyCache();
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -191,6 +199,7 @@ public abstract class Expr {
         final  Expr object;
         final  Token identifier;
         final  Expr value;
+        PropertyCache cache = new PropertyCache();
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -204,6 +213,8 @@ public abstract class Expr {
         }
 
         final  Token keyword;
+        int depth = -1;
+        int slot;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -7,13 +7,44 @@ public class Func implements LoxCallable {
     public Environment closure;
     public final List<Token> params;
     public final List<Stmt> body;
+    // Size of the call environment.
+    private final int locals;
     private final String name;
+    // Methods take their receiver in slot 0 of the call environment, before the parameters.
+    final boolean isMethod;
+    private final LoxInstance receiver;
+    // Hotness and compiled code are kept on the declaration, so every closure made from it and every
+    // bound copy of a method share them.
+    private final Stmt.Function declaration;
 
-    public Func(String name, List<Token> params, List<Stmt> body, Environment closure) {
-        this.name = name;
-        this.params = params;
-        this.body = body;
+    public Func(Stmt.Function declaration, Environment closure) {
+        this(declaration, closure, false);
+    }
+
+    public Func(Stmt.Function declaration, Environment closure, boolean isMethod) {
+        this.name = declaration.identifier.lexeme;
+        this.params = declaration.params;
+        this.body = declaration.body;
+        this.locals = declaration.locals;
         this.closure = closure;
+        this.isMethod = isMethod;
+        this.receiver = null;
+        this.declaration = declaration;
+    }
+
+    private Func(Func method, LoxInstance receiver) {
+        this.name = method.name;
+        this.params = method.params;
+        this.body = method.body;
+        this.locals = method.locals;
+        this.closure = method.closure;
+        this.isMethod = true;
+        this.receiver = receiver;
+        this.declaration = method.declaration;
+    }
+
+    String name() {
+        return name;
     }
 
     @Override
@@ -23,16 +54,175 @@ public class Func implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        environment = new Environment(closure);
+        return invoke(interpreter, receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return invoke0(interpreter, receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return invoke1(interpreter, receiver, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return invoke2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return invoke3(interpreter, receiver, a, b, c);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return invoke4(interpreter, receiver, a, b, c, d);
+    }
+
+    /**
+     * Calls the function with the given receiver, so a method can be called on an instance without
+     * being bound to it first.
+     */
+    Object invoke(Interpreter interpreter, LoxInstance receiver, List<Object> arguments) {
+        JitCode code = compiled(interpreter);
+        if (code != null) {
+            return finish(interpreter, code.invoke(interpreter, closure, receiver, arguments.toArray()));
+        }
+        Environment environment = frame(receiver);
         for (int i = 0; i < params.size(); i++) {
-            environment.define(params.get(i).lexeme, arguments.get(i));
+            environment.define(arguments.get(i));
+        }
+        return run(interpreter, environment);
+    }
+
+    // The fixed-arity variants of invoke define their arguments straight into the new frame.
+    Object invoke0(Interpreter interpreter, LoxInstance receiver) {
+        JitCode code = compiled(interpreter);
+        if (code != null) {
+            return finish(interpreter, code.invoke(interpreter, closure, receiver, new Object[0]));
+        }
+        return run(interpreter, frame(receiver));
+    }
+
+    Object invoke1(Interpreter interpreter, LoxInstance receiver, Object a) {
+        JitCode code = compiled(interpreter);
+        if (code != null) {
+            return finish(interpreter, code.invoke(interpreter, closure, receiver, new Object[]{a}));
+        }
+        Environment environment = frame(receiver);
+        environment.define(a);
+        return run(interpreter, environment);
+    }
+
+    Object invoke2(Interpreter interpreter, LoxInstance receiver, Object a, Object b) {
+        JitCode code = compiled(interpreter);
+        if (code != null) {
+            return finish(interpreter, code.invoke(interpreter, closure, receiver, new Object[]{a, b}));
         }
+        Environment environment = frame(receiver);
+        environment.define(a);
+        environment.define(b);
+        return run(interpreter, environment);
+    }
+
+    Object invoke3(Interpreter interpreter, LoxInstance receiver, Object a, Object b, Object c) {
+        JitCode code = compiled(interpreter);
+        if (code != null) {
+            return finish(interpreter, code.invoke(interpreter, closure, receiver, new Object[]{a, b, c}));
+        }
+        Environment environment = frame(receiver);
+        environment.define(a);
+        environment.define(b);
+        environment.define(c);
+        return run(interpreter, environment);
+    }
+
+    Object invoke4(Interpreter interpreter, LoxInstance receiver, Object a, Object b, Object c, Object d) {
+        JitCode code = compiled(interpreter);
+        if (code != null) {
+            return finish(interpreter, code.invoke(interpreter, closure, receiver, new Object[]{a, b, c, d}));
+        }
+        Environment environment = frame(receiver);
+        environment.define(a);
+        environment.define(b);
+        environment.define(c);
+        environment.define(d);
+        return run(interpreter, environment);
+    }
+
+    // Counts the call and returns the compiled body to run instead, if there is one.
+    private JitCode compiled(Interpreter interpreter) {
+        if (Metrics.enabled) Metrics.calls.increment();
+        if (interpreter.jitThreshold < 0) return null;
+        return jitCode(interpreter.jitThreshold);
+    }
+
+    private Environment frame(LoxInstance receiver) {
+        environment = new Environment(closure, locals);
+        if (isMethod) environment.define(receiver);
+        return environment;
+    }
+
+    private Object run(Interpreter interpreter, Environment environment) {
+        Stmt.Function caller = interpreter.currentFunction;
+        interpreter.currentFunction = declaration;
         try {
-            interpreter.executeBlock(body, environment);
-        } catch (Return r) {
-            return r.value;
+            return complete(interpreter, interpreter.executeBlock(body, environment));
+        } finally {
+            interpreter.currentFunction = caller;
+        }
+    }
+
+    // Compiled code returns tail calls too. The calls to compiled code stay in the invoke methods, as
+    // one more method between recursive calls keeps HotSpot from inlining as deeply.
+    private static Object finish(Interpreter interpreter, Object value) {
+        if (!(value instanceof Interpreter.TailCall)) return value;
+        Stmt.Function caller = interpreter.currentFunction;
+        try {
+            return complete(interpreter, value);
+        } finally {
+            interpreter.currentFunction = caller;
+        }
+    }
+
+    // Tail calls run here one after another, so they don't nest Java frames.
+    private static Object complete(Interpreter interpreter, Object completion) {
+        while (completion instanceof Interpreter.TailCall call) completion = interpreter.tailCall(call);
+        return Interpreter.returnValue(completion);
+    }
+
+    /**
+     * Runs the function for a tail call and returns the completion of its body, which may be the
+     * next tail call. Without a receiver, a bound method keeps its own.
+     */
+    Object tail(Interpreter interpreter, LoxInstance receiver, Object[] arguments) {
+        if (receiver == null) receiver = this.receiver;
+        JitCode code = compiled(interpreter);
+        if (code != null) return code.invoke(interpreter, closure, receiver, arguments);
+        Environment environment = frame(receiver);
+        for (Object argument : arguments) environment.define(argument);
+        interpreter.currentFunction = declaration;
+        return interpreter.executeBlock(body, environment);
+    }
+
+    // Calls and loop iterations both count towards the threshold, so a function running one long
+    // loop gets compiled for its next call. The compiled code takes the closure as an argument, so it
+    // serves every Func of the declaration.
+    private JitCode jitCode(int threshold) {
+        Stmt.Function declaration = this.declaration;
+        if (declaration.jitCode == null && !declaration.jitFailed && ++declaration.hotness > threshold) {
+            declaration.jitCode = JitCompiler.compile(this);
+            declaration.jitFailed = declaration.jitCode == null;
         }
-        return null;
+        return declaration.jitCode;
+    }
+
+    // A method as declared in its class, before being bound to an instance.
+    boolean isUnbound() {
+        return isMethod && receiver == null;
     }
 
     @Override
@@ -41,8 +231,6 @@ public class Func implements LoxCallable {
     }
 
     public Object bind(LoxInstance loxInstance) {
-        environment = new Environment(closure);
-        environment.define("this", loxInstance);
-        return new Func(name, params, body, environment);
+        return new Func(this, loxInstance);
     }
 }
@@ -8,16 +8,62 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     private Environment environment = new Environment();
     final Environment globals = environment;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    int jitThreshold = -1;
+    // Declaration of the Lox function running, whose loops count towards its hotness.
+    Stmt.Function currentFunction;
+    private Profiler profiler;
+    // The operand that wasn't a number, for whoever gets NaN back from evaluateDouble.
+    private Object notANumber = NONE;
+    // Statements complete with null when execution goes on with the next one, BREAK when they leave
+    // a loop, or the value of a return, RETURN_NIL standing for a return of nil. The closure compiler's
+    // statements complete with the same values.
+    static final Object BREAK = new Object();
+    static final Object RETURN_NIL = new Object();
+
+    static final class TailCall {
+        final Func function;
+        final LoxInstance receiver;
+        final Object[] arguments;
+        final Token paren;
+
+        TailCall(Func function, LoxInstance receiver, Object[] arguments, Token paren) {
+            this.function = function;
+            this.receiver = receiver;
+            this.arguments = arguments;
+            this.paren = paren;
+        }
+    }
+
+    // Marks that no operand is waiting in notANumber.
+    private static final Object NONE = new Object();
+
+    public Interpreter() {
+        Natives.standard.forEach(this::define);
+    }
+
+    /**
+     * Defines a global through which Lox code calls the native function.
+     */
+    public void define(NativeFunction function) {
+        globals.define(function.name, function);
+    }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    /**
+     * Compiles functions to JVM bytecode once they have been called or looped in this many times.
+     * A negative threshold keeps every function in the tree walker.
+     */
+    public void setJitThreshold(int jitThreshold) {
+        this.jitThreshold = jitThreshold;
     }
 
-    private static class BreakException extends RuntimeException {
+    /**
+     * Records every call on the profiler's shadow stack. Without one, calls only pay a null check.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
     }
 
     public void interpret(List<Stmt> statements) {
@@ -25,30 +71,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             statements.forEach(stmt -> stmt.accept(this));
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
+        } finally {
+            Output.current().flush();
         }
     }
 
-    private String stringify(Object value) {
-        if (value == null) return "nil";
-        if (value instanceof Double) {
-            String text = value.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
-        return value.toString();
-    }
-
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = null;
         if (expr.value != null) {
             value = expr.value.accept(this);
         }
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.identifier, value);
+        if (expr.depth != -1) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
             globals.assign(expr.identifier, value);
         }
@@ -68,48 +103,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object leftValue = expr.left.accept(this);
-        Object rightValue = expr.right.accept(this);
         Token operator = expr.operator;
         switch (operator.type) {
             case PLUS -> {
-                if (leftValue instanceof Double && rightValue instanceof Double) {
-                    return (Double) leftValue + (Double) rightValue;
-                } else if (leftValue instanceof String && rightValue instanceof String) {
-                    return leftValue + (String) rightValue;
-                }
-                throw new RuntimeError(operator, "Operands must be String or Numbers");
-            }
-            case MINUS -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                return (Double) leftValue - (Double) rightValue;
-            }
-            case STAR -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                return (Double) leftValue * (Double) rightValue;
-            }
-            case SLASH -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                if ((Double) rightValue == 0) throw new RuntimeError(operator, "Can't divide by zero.");
-                return (Double) leftValue / (Double) rightValue;
+                if (expr.nonNumeric) return concatenate(expr);
+                double result = arithmetic(expr);
+                if (result != result && notANumber != NONE) return takeNotANumber();
+                return result;
             }
-            case LESS -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                return (Double) leftValue < (Double) rightValue;
+            case MINUS, STAR, SLASH -> {
+                return arithmetic(expr);
             }
-            case LESS_EQUAL -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                return (Double) leftValue <= (Double) rightValue;
-            }
-            case GREATER -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                return (Double) leftValue > (Double) rightValue;
-            }
-            case GREATER_EQUAL -> {
-                checkNumberOperands(operator, leftValue, rightValue);
-                return (Double) leftValue >= (Double) rightValue;
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL -> {
+                double leftValue = leftOperand(expr);
+                double rightValue = rightOperand(expr);
+                return switch (operator.type) {
+                    case LESS -> leftValue < rightValue;
+                    case LESS_EQUAL -> leftValue <= rightValue;
+                    case GREATER -> leftValue > rightValue;
+                    default -> leftValue >= rightValue;
+                };
             }
         }
+        Object leftValue = expr.left.accept(this);
+        Object rightValue = expr.right.accept(this);
         if (operator.type == TokenType.EQUAL_EQUAL) {
             return isEqual(leftValue, rightValue);
         } else if (operator.type == TokenType.BANG_EQUAL) {
@@ -118,27 +135,227 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    private Object concatenate(Expr.Binary expr) {
+        Object leftValue = expr.left.accept(this);
+        Object rightValue = expr.right.accept(this);
+        if (leftValue instanceof Double && rightValue instanceof Double) {
+            return (Double) leftValue + (Double) rightValue;
+        } else if (leftValue instanceof CharSequence l && rightValue instanceof CharSequence r) {
+            return LoxString.concat(l, r);
+        }
+        throw new RuntimeError(expr.operator, "Operands must be String or Numbers");
+    }
+
+    // Numeric subexpressions are evaluated as primitive doubles and only boxed once their value
+    // leaves the arithmetic, e.g. when it is stored or printed. An operand that isn't a number, or a
+    // PLUS that turns out to join strings, comes back as NaN with the value left in notANumber; the
+    // PLUS is marked so later runs skip the fast path. A NaN result is only checked against the
+    // field, so numbers pay nothing for it.
+    private double evaluateDouble(Expr expr) {
+        if (expr instanceof Expr.Binary binary && !binary.nonNumeric) {
+            switch (binary.operator.type) {
+                case PLUS, MINUS, STAR, SLASH -> {
+                    return arithmetic(binary);
+                }
+            }
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return evaluateDouble(grouping.expression);
+        } else if (expr instanceof Expr.Literal literal && literal.value instanceof Double number) {
+            return number;
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            return negate(unary);
+        }
+        Object value = expr.accept(this);
+        if (value instanceof Double number) return number;
+        return notANumber(value);
+    }
+
+    private double notANumber(Object value) {
+        notANumber = value;
+        return Double.NaN;
+    }
+
+    private Object takeNotANumber() {
+        Object value = notANumber;
+        notANumber = NONE;
+        return value;
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        Token operator = expr.operator;
+        double leftValue = leftOperand(expr);
+        if (leftValue != leftValue && notANumber != NONE) return leftValue;
+        double rightValue = rightOperand(expr);
+        return switch (operator.type) {
+            case PLUS -> leftValue + rightValue;
+            case MINUS -> leftValue - rightValue;
+            case STAR -> leftValue * rightValue;
+            default -> {
+                if (rightValue == 0) throw new RuntimeError(operator, "Can't divide by zero.");
+                yield leftValue / rightValue;
+            }
+        };
+    }
+
+    private double leftOperand(Expr.Binary expr) {
+        double value = evaluateDouble(expr.left);
+        if (value == value || notANumber == NONE) return value;
+        Object left = takeNotANumber();
+        Object rightValue = expr.right.accept(this);
+        if (expr.operator.type == TokenType.PLUS && left instanceof CharSequence leftValue
+                && rightValue instanceof CharSequence r) {
+            expr.nonNumeric = true;
+            return notANumber(LoxString.concat(leftValue, r));
+        }
+        throw operandsError(expr.operator);
+    }
+
+    private double rightOperand(Expr.Binary expr) {
+        double value = evaluateDouble(expr.right);
+        if (value == value || notANumber == NONE) return value;
+        takeNotANumber();
+        throw operandsError(expr.operator);
+    }
+
+    private RuntimeError operandsError(Token operator) {
+        if (operator.type == TokenType.PLUS) {
+            return new RuntimeError(operator, "Operands must be String or Numbers");
+        }
+        return new RuntimeError(operator, "Operands must be both Numbers");
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        return call(expr, false);
+    }
+
+    // A tail call to a Lox function evaluates to a TailCall instead of calling it. The function that
+    // returns it makes the call once its own body has finished.
+    private Object call(Expr.Call expr, boolean tail) {
+        if (expr.callee instanceof Expr.Get get) return invokeMethod(expr, get, tail);
         Object callee = expr.callee.accept(this);
-        List<Object> arguments = new ArrayList<>();
-        expr.arguments.forEach(a -> arguments.add(a.accept(this)));
-        LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got "
-                    + arguments.size() + ".");
+        return call(callee, null, expr.arguments, expr.paren, tail);
+    }
+
+    // Calls a method straight on the instance it is looked up on, without binding it first.
+    private Object invokeMethod(Expr.Call expr, Expr.Get get, boolean tail) {
+        Object obj = get.object.accept(this);
+        if (!(obj instanceof LoxInstance instance)) {
+            throw new RuntimeError(get.identifier, "Only instances have properties.");
+        }
+        Func method = get.cache.method(instance, get.identifier);
+        if (method == null) {
+            Object callee = get.cache.get(instance, get.identifier);
+            return call(callee, null, expr.arguments, expr.paren, tail);
+        }
+        return call(method, instance, expr.arguments, expr.paren, tail);
+    }
+
+    // Calls with up to four arguments go through the fixed-arity entry points, which define the
+    // arguments straight into the callee's frame. The receiver is given for a method called without
+    // being bound.
+    private Object call(Object callee, LoxInstance receiver, List<Expr> arguments, Token paren,
+                        boolean tail) {
+        int count = arguments.size();
+        if (tail && callee instanceof Func func) {
+            Object[] values = new Object[count];
+            for (int i = 0; i < count; i++) values[i] = arguments.get(i).accept(this);
+            checkArity(func, count, paren);
+            return new TailCall(func, receiver, values, paren);
+        }
+        if (count > 4) {
+            List<Object> values = new ArrayList<>(count);
+            arguments.forEach(a -> values.add(a.accept(this)));
+            LoxCallable function = callable(callee, count, paren);
+            if (receiver == null) return call(function, values, paren);
+            return invoke((Func) function, receiver, values, paren);
+        }
+        Object a = count > 0 ? arguments.get(0).accept(this) : null;
+        Object b = count > 1 ? arguments.get(1).accept(this) : null;
+        Object c = count > 2 ? arguments.get(2).accept(this) : null;
+        Object d = count > 3 ? arguments.get(3).accept(this) : null;
+        LoxCallable function = callable(callee, count, paren);
+        return call(function, receiver, count, a, b, c, d, paren);
+    }
+
+    // Arguments past count are ignored.
+    Object call(LoxCallable function, LoxInstance receiver, int count, Object a, Object b, Object c, Object d,
+                Token paren) {
+        if (profiler != null) profiler.enter(function, paren.line);
+        try {
+            if (receiver != null) {
+                Func method = (Func) function;
+                return switch (count) {
+                    case 0 -> method.invoke0(this, receiver);
+                    case 1 -> method.invoke1(this, receiver, a);
+                    case 2 -> method.invoke2(this, receiver, a, b);
+                    case 3 -> method.invoke3(this, receiver, a, b, c);
+                    default -> method.invoke4(this, receiver, a, b, c, d);
+                };
+            }
+            return switch (count) {
+                case 0 -> function.call0(this);
+                case 1 -> function.call1(this, a);
+                case 2 -> function.call2(this, a, b);
+                case 3 -> function.call3(this, a, b, c);
+                default -> function.call4(this, a, b, c, d);
+            };
+        } catch (IllegalArgumentException e) {
+            if (!(function instanceof NativeFunction)) throw e;
+            throw new RuntimeError(paren, e.getMessage());
+        } catch (StackOverflowError e) {
+            throw new StackOverflow(paren);
+        } finally {
+            if (profiler != null) profiler.exit();
+        }
+    }
+
+    Object call(LoxCallable function, List<Object> arguments, Token paren) {
+        if (function instanceof NativeFunction nativeFunction) return nativeFunction.call(arguments, paren);
+        if (profiler == null) return function.call(this, arguments);
+        profiler.enter(function, paren.line);
+        try {
+            return function.call(this, arguments);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    Object invoke(Func method, LoxInstance receiver, List<Object> arguments, Token paren) {
+        if (profiler == null) return method.invoke(this, receiver, arguments);
+        profiler.enter(method, paren.line);
+        try {
+            return method.invoke(this, receiver, arguments);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    // The callee of a call with count arguments, once its arguments have been evaluated.
+    static LoxCallable callable(Object callee, int count, Token paren) {
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
         }
-        return function.call(this, arguments);
+        checkArity(function, count, paren);
+        return function;
     }
 
-    private void checkNumberOperands(Token operator, Object leftValue, Object rightValue) {
-        if (leftValue instanceof Double && rightValue instanceof Double) return;
-        throw new RuntimeError(operator, "Operands must be both Numbers");
+    private static void checkArity(LoxCallable function, int count, Token paren) {
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + count + ".");
+        }
     }
 
-    private boolean isEqual(Object leftValue, Object rightValue) {
-        if (leftValue == null && rightValue == null) return true;
+    // The scanner and the AST cache keep one instance of each distinct literal in a program, so two
+    // equal literals usually match on identity. Other strings, like the results of concatenation,
+    // go through String.equals, which rejects different lengths straight away.
+    static boolean isEqual(Object leftValue, Object rightValue) {
+        if (leftValue == rightValue) return true;
         if (leftValue == null) return false;
+        if (leftValue instanceof LoxString || rightValue instanceof LoxString) {
+            return leftValue instanceof CharSequence l && rightValue instanceof CharSequence r
+                    && LoxString.equal(l, r);
+        }
         return leftValue.equals(rightValue);
     }
 
@@ -155,25 +372,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         TokenType operator = expr.operator.type;
+        if (operator == TokenType.MINUS) return negate(expr);
         Object obj = expr.right.accept(this);
         if (operator == TokenType.BANG) {
             return !isTruthy(obj);
-        } else if (operator == TokenType.MINUS) {
-            checkNumberOperand(expr.operator, obj);
-            return -(Double) obj;
         }
         return null;
     }
 
+    private double negate(Expr.Unary expr) {
+        double value = evaluateDouble(expr.right);
+        if (value == value || notANumber == NONE) return -value;
+        takeNotANumber();
+        throw new RuntimeError(expr.operator, "Operand must be a number");
+    }
+
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.identifier, expr);
+        return lookUpVariable(expr.identifier, expr.depth, expr.slot);
     }
 
-    private Object lookUpVariable(Token identifier, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, identifier.lexeme);
+    private Object lookUpVariable(Token identifier, int depth, int slot) {
+        if (depth != -1) {
+            return environment.getAt(depth, slot);
         } else {
             return globals.get(identifier);
         }
@@ -181,18 +402,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitClassExpr(Expr.Class expr) {
-        LoxClass klass = (LoxClass) environment.get(expr.identifier);
+        LoxClass klass = (LoxClass) lookUpVariable(expr.identifier, expr.depth, expr.slot);
         LoxInstance instance = new LoxInstance(klass);
         try {
-            Func constructor = (Func) instance.get(expr.identifier);
-            List<Object> args = new ArrayList<>();
-            expr.arguments.forEach(a -> args.add(a.accept(this)));
-            if (args.size() != constructor.arity()) {
-                throw new RuntimeError(expr.identifier, "Class constructor expected " + constructor.arity() + " arguments but got " +
-                        args.size() + " instead.");
-            }
-            constructor.call(this, args);
-
+            Func constructor = instance.findMethod(expr.identifier);
+            call(constructor, instance, expr.arguments, expr.identifier, false);
+        } catch (StackOverflow error) {
+            throw error;
         } catch (RuntimeError ignored) {
         }
         return instance;
@@ -201,8 +417,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object obj = expr.object.accept(this);
-        if (obj instanceof LoxInstance) {
-            return ((LoxInstance) obj).get(expr.identifier);
+        if (obj instanceof LoxInstance instance) {
+            return expr.cache.get(instance, expr.identifier);
         }
         throw new RuntimeError(expr.identifier, "Only instances have properties.");
     }
@@ -210,120 +426,144 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitSetExpr(Expr.Set expr) {
         Object obj = expr.object.accept(this);
-        if (!(obj instanceof LoxInstance)) {
+        if (!(obj instanceof LoxInstance instance)) {
             throw new RuntimeError(expr.identifier, "Only instances have fields");
         }
         Object value = expr.value.accept(this);
-        ((LoxInstance) obj).set(expr.identifier, value);
+        expr.cache.set(instance, expr.identifier, value);
         return value;
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
-        throw new RuntimeError(operator, "Operand must be a number");
-    }
-
-    private boolean isTruthy(Object obj) {
+    static boolean isTruthy(Object obj) {
         if (obj == null) return false;
         if (obj instanceof Boolean b) return b;
         return true;
     }
 
-    public void executeBlock(List<Stmt> block, Environment environment) {
+    public Object executeBlock(List<Stmt> block, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
-            block.forEach(s -> s.accept(this));
+            for (Stmt stmt : block) {
+                Object completion = stmt.accept(this);
+                if (completion != null) return completion;
+            }
+            return null;
         } finally {
             this.environment = previous;
         }
     }
 
+    // The value a function returns when its body completed with the given completion.
+    static Object returnValue(Object completion) {
+        return completion == BREAK || completion == RETURN_NIL ? null : completion;
+    }
+
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        stmt.statements.forEach(s -> s.accept(this));
-        return null;
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals == 0) return executeBlock(stmt.statements, environment);
+        return executeBlock(stmt.statements, new Environment(environment, stmt.locals));
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Object visitIfStmt(Stmt.If stmt) {
         Object value = stmt.condition.accept(this);
         if (isTruthy(value)) {
-            stmt.thenBranch.accept(this);
+            return stmt.thenBranch.accept(this);
         } else if (stmt.elseBranch != null) {
-            stmt.elseBranch.accept(this);
+            return stmt.elseBranch.accept(this);
         }
         return null;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        try {
-            while (isTruthy(stmt.condition.accept(this))) {
-                stmt.body.accept(this);
-            }
-        } catch (BreakException ignored) {
-
+    public Object visitWhileStmt(Stmt.While stmt) {
+        while (isTruthy(stmt.condition.accept(this))) {
+            if (currentFunction != null && jitThreshold >= 0) currentFunction.hotness++;
+            Object completion = stmt.body.accept(this);
+            if (completion == BREAK) break;
+            if (completion != null) return completion;
         }
         return null;
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new BreakException();
+    public Object visitBreakStmt(Stmt.Break stmt) {
+        return BREAK;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
         stmt.expression.accept(this);
         return null;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Object visitPrintStmt(Stmt.Print stmt) {
         Object value = stmt.expression.accept(this);
-        System.out.println(stringify(value));
+        Output.print(value);
         return null;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Object visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
-        if (stmt.initializer != null) value = stmt.initializer.accept(this);
-        throw new Return(value);
+        if (stmt.initializer instanceof Expr.Call call) {
+            value = call(call, true);
+        } else if (stmt.initializer != null) {
+            value = stmt.initializer.accept(this);
+        }
+        return value == null ? RETURN_NIL : value;
+    }
+
+    // Makes the call a function returned, in place of that function.
+    Object tailCall(TailCall call) {
+        if (profiler != null) {
+            profiler.exit();
+            profiler.enter(call.function, call.paren.line);
+        }
+        return call.function.tail(this, call.receiver, call.arguments);
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Object visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = stmt.initializer.accept(this);
         }
-        environment.define(stmt.identifier.lexeme, value);
+        define(stmt.identifier, stmt.slot, value);
         return null;
     }
 
+    private void define(Token identifier, int slot, Object value) {
+        if (slot == -1) {
+            globals.define(identifier.lexeme, value);
+        } else {
+            environment.define(slot, value);
+        }
+    }
+
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        environment.define(stmt.identifier.lexeme, new Func(stmt.identifier.lexeme, stmt.params, stmt.body, this.environment));
+    public Object visitFunctionStmt(Stmt.Function stmt) {
+        Func function = new Func(stmt, this.environment);
+        define(stmt.identifier, stmt.slot, function);
         return null;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
-        environment.define(stmt.identifier.lexeme, null);
+    public Object visitClassStmt(Stmt.Class stmt) {
         Map<String, Func> methods = new HashMap<>();
         stmt.methods.forEach(method -> {
-            Func function = new Func(method.identifier.lexeme, method.params, method.body, environment);
+            Func function = new Func(method, environment, true);
             methods.put(method.identifier.lexeme, function);
         });
         LoxClass klass = new LoxClass(stmt.identifier.lexeme, methods);
-        environment.assign(stmt.identifier, klass);
+        define(stmt.identifier, stmt.slot, klass);
         return null;
     }
 }
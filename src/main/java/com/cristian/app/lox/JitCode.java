@@ -0,0 +1,8 @@
+package com.cristian.app.lox;
+
+/**
+ * Body of a {@link Func} compiled to JVM bytecode by the {@link JitCompiler}.
+ */
+public interface JitCode {
+    Object invoke(Interpreter interpreter, Environment closure, LoxInstance receiver, Object[] arguments);
+}
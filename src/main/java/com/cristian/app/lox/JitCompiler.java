@@ -0,0 +1,467 @@
+package com.cristian.app.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.cristian.app.lox.JitClassWriter.*;
+
+/**
+ * Compiles the body of a hot {@link Func} to a JVM class implementing {@link JitCode}. Locals of
+ * the function live in JVM locals, variables of enclosing functions are read from the closure
+ * environment and globals from the interpreter. Values stay boxed and every operation calls into
+ * {@link JitRuntime}, so the compiled code behaves like the tree walker, only without dispatching
+ * on the AST. Functions declaring functions or classes, or using {@code new}, are left to the
+ * interpreter.
+ */
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final String CLASS_NAME = "com/cristian/app/lox/JitFunction";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String RUNTIME = "com/cristian/app/lox/JitRuntime";
+    private static final String INTERPRETER = "com/cristian/app/lox/Interpreter";
+    private static final String ENVIRONMENT = "com/cristian/app/lox/Environment";
+    private static final String TOKEN = "com/cristian/app/lox/Token";
+    private static final String CACHE = "com/cristian/app/lox/PropertyCache";
+    private static final String INVOKE_DESCRIPTOR = "(L" + INTERPRETER + ";L" + ENVIRONMENT + ";Lcom/cristian/app/lox/LoxInstance;[L" + OBJECT + ";)L" + OBJECT + ";";
+    private static final String BINARY_DESCRIPTOR = "(L" + OBJECT + ";L" + OBJECT + ";L" + TOKEN + ";)L" + OBJECT + ";";
+
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int CLOSURE_LOCAL = 2;
+    private static final int RECEIVER_LOCAL = 3;
+    private static final int ARGUMENTS_LOCAL = 4;
+    private static final int CONSTANTS_LOCAL = 5;
+    private static final int FIRST_LOCAL = 6;
+
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final JitClassWriter writer = new JitClassWriter();
+    private final JitClassWriter.Code code = writer.new Code(FIRST_LOCAL);
+    private final List<Object> constants = new ArrayList<>();
+    private final List<List<Integer>> scopes = new ArrayList<>();
+    private int nextLocal = FIRST_LOCAL;
+    private JitClassWriter.Label loopEnd;
+
+    private JitCompiler() {
+    }
+
+    /**
+     * Returns the compiled body of the function, or null when it uses something the compiler
+     * does not handle.
+     */
+    static JitCode compile(Func function) {
+        try {
+            return new JitCompiler().function(function);
+        } catch (Unsupported | IllegalStateException | ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private JitCode function(Func function) throws ReflectiveOperationException {
+        code.load(0);
+        code.field(GETFIELD, CLASS_NAME, "constants", "[L" + OBJECT + ";", 0);
+        code.store(CONSTANTS_LOCAL);
+        beginScope();
+        if (function.isMethod) scopes.get(0).add(RECEIVER_LOCAL);
+        for (int i = 0; i < function.params.size(); i++) {
+            code.load(ARGUMENTS_LOCAL);
+            code.pushInt(i);
+            code.op(AALOAD, -1);
+            declareLocal();
+        }
+        function.body.forEach(this::statement);
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+        writer.method(ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR, code);
+
+        writer.field(ACC_PRIVATE | ACC_FINAL, "constants", "[L" + OBJECT + ";");
+        JitClassWriter.Code init = writer.new Code(2);
+        init.load(0);
+        init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+        init.load(0);
+        init.load(1);
+        init.field(PUTFIELD, CLASS_NAME, "constants", "[L" + OBJECT + ";", -2);
+        init.op(RETURN, 0);
+        writer.method(ACC_PUBLIC, "<init>", "([L" + OBJECT + ";)V", init);
+
+        byte[] bytes = writer.toBytes(CLASS_NAME, OBJECT, "com/cristian/app/lox/JitCode");
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        return (JitCode) lookup.lookupClass().getConstructor(Object[].class)
+                .newInstance((Object) constants.toArray());
+    }
+
+    private void statement(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void expression(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(new ArrayList<>());
+    }
+
+    private void endScope() {
+        nextLocal -= scopes.remove(scopes.size() - 1).size();
+    }
+
+    // Stores the value on top of the stack in the next slot of the innermost scope.
+    private void declareLocal() {
+        int local = nextLocal++;
+        scopes.get(scopes.size() - 1).add(local);
+        code.store(local);
+    }
+
+    // The JVM local holding (depth, slot), or -1 if the variable lives outside this function.
+    private int local(int depth, int slot) {
+        if (depth >= scopes.size()) return -1;
+        List<Integer> scope = scopes.get(scopes.size() - 1 - depth);
+        if (slot >= scope.size()) throw new Unsupported();
+        return scope.get(slot);
+    }
+
+    private void constant(Object value) {
+        int index = constants.indexOf(value);
+        if (index == -1) {
+            index = constants.size();
+            constants.add(value);
+        }
+        code.load(CONSTANTS_LOCAL);
+        code.pushInt(index);
+        code.op(AALOAD, -1);
+    }
+
+    private void token(Token token) {
+        constant(token);
+        code.type(CHECKCAST, TOKEN, 0);
+    }
+
+    private void cache(PropertyCache cache) {
+        constant(cache);
+        code.type(CHECKCAST, CACHE, 0);
+    }
+
+    private void loadVariable(Token identifier, int depth, int slot) {
+        if (depth == -1) {
+            code.load(INTERPRETER_LOCAL);
+            token(identifier);
+            code.invoke(INVOKESTATIC, RUNTIME, "getGlobal", "(L" + INTERPRETER + ";L" + TOKEN + ";)L" + OBJECT + ";");
+            return;
+        }
+        int local = local(depth, slot);
+        if (local != -1) {
+            code.load(local);
+        } else {
+            code.load(CLOSURE_LOCAL);
+            code.pushInt(depth - scopes.size());
+            code.pushInt(slot);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)L" + OBJECT + ";");
+        }
+    }
+
+    private void truthy() {
+        code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(L" + OBJECT + ";)Z");
+    }
+
+    private void box() {
+        code.invoke(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+    }
+
+    private void not() {
+        code.pushInt(1);
+        code.op(IXOR, -1);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth == -1) {
+            code.load(INTERPRETER_LOCAL);
+            token(expr.identifier);
+            value(expr.value);
+            code.invoke(INVOKESTATIC, RUNTIME, "assignGlobal", "(L" + INTERPRETER + ";L" + TOKEN + ";L" + OBJECT + ";)L" + OBJECT + ";");
+            return null;
+        }
+        int local = local(expr.depth, expr.slot);
+        if (local != -1) {
+            value(expr.value);
+            code.op(DUP, 1);
+            code.store(local);
+        } else {
+            code.load(CLOSURE_LOCAL);
+            code.pushInt(expr.depth - scopes.size());
+            code.pushInt(expr.slot);
+            value(expr.value);
+            code.invoke(INVOKESTATIC, RUNTIME, "assignAt", "(L" + ENVIRONMENT + ";IIL" + OBJECT + ";)L" + OBJECT + ";");
+        }
+        return null;
+    }
+
+    private void value(Expr expr) {
+        if (expr == null) {
+            code.op(ACONST_NULL, 1);
+        } else {
+            expression(expr);
+        }
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        JitClassWriter.Label end = code.label();
+        expression(expr.left);
+        code.op(DUP, 1);
+        truthy();
+        code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+        code.op(POP, -1);
+        expression(expr.right);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expression(expr.left);
+        expression(expr.right);
+        String helper = switch (expr.operator.type) {
+            case PLUS -> "add";
+            case MINUS -> "subtract";
+            case STAR -> "multiply";
+            case SLASH -> "divide";
+            case LESS -> "less";
+            case LESS_EQUAL -> "lessEqual";
+            case GREATER -> "greater";
+            case GREATER_EQUAL -> "greaterEqual";
+            default -> null;
+        };
+        if (helper != null) {
+            token(expr.operator);
+            code.invoke(INVOKESTATIC, RUNTIME, helper, BINARY_DESCRIPTOR);
+            return null;
+        }
+        code.invoke(INVOKESTATIC, INTERPRETER, "isEqual", "(L" + OBJECT + ";L" + OBJECT + ";)Z");
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL -> box();
+            case BANG_EQUAL -> {
+                not();
+                box();
+            }
+            default -> {
+                code.op(POP, -1);
+                code.op(ACONST_NULL, 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        call(expr, false);
+        return null;
+    }
+
+    // A tail call returns the call for the caller of the compiled code to make, as the interpreter does.
+    private void call(Expr.Call expr, boolean tail) {
+        if (expr.callee instanceof Expr.Get get) {
+            expression(get.object);
+            code.op(DUP, 1);
+            cache(get.cache);
+            token(get.identifier);
+            code.invoke(INVOKESTATIC, RUNTIME, "findMethod", "(L" + OBJECT + ";L" + CACHE + ";L" + TOKEN + ";)L" + OBJECT + ";");
+            code.load(INTERPRETER_LOCAL);
+            arguments(expr.arguments);
+            token(expr.paren);
+            code.invoke(INVOKESTATIC, RUNTIME, tail ? "tailInvokeMethod" : "invokeMethod", "(L" + OBJECT + ";L" + OBJECT + ";L" + INTERPRETER + ";[L" + OBJECT + ";L" + TOKEN + ";)L" + OBJECT + ";");
+            return;
+        }
+        code.load(INTERPRETER_LOCAL);
+        expression(expr.callee);
+        arguments(expr.arguments);
+        token(expr.paren);
+        code.invoke(INVOKESTATIC, RUNTIME, tail ? "tailCall" : "call", "(L" + INTERPRETER + ";L" + OBJECT + ";[L" + OBJECT + ";L" + TOKEN + ";)L" + OBJECT + ";");
+    }
+
+    private void arguments(List<Expr> arguments) {
+        code.pushInt(arguments.size());
+        code.type(ANEWARRAY, OBJECT, 0);
+        for (int i = 0; i < arguments.size(); i++) {
+            code.op(DUP, 1);
+            code.pushInt(i);
+            expression(arguments.get(i));
+            code.op(AASTORE, -3);
+        }
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expression(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            code.op(ACONST_NULL, 1);
+        } else if (expr.value instanceof Boolean value) {
+            code.field(GETSTATIC, "java/lang/Boolean", value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;", 1);
+        } else {
+            constant(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expression(expr.right);
+        switch (expr.operator.type) {
+            case MINUS -> {
+                token(expr.operator);
+                code.invoke(INVOKESTATIC, RUNTIME, "negate", "(L" + OBJECT + ";L" + TOKEN + ";)L" + OBJECT + ";");
+            }
+            case BANG -> {
+                truthy();
+                not();
+                box();
+            }
+            default -> {
+                code.op(POP, -1);
+                code.op(ACONST_NULL, 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        loadVariable(expr.identifier, expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitClassExpr(Expr.Class expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        expression(expr.object);
+        cache(expr.cache);
+        token(expr.identifier);
+        code.invoke(INVOKESTATIC, RUNTIME, "getProperty", "(L" + OBJECT + ";L" + CACHE + ";L" + TOKEN + ";)L" + OBJECT + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        expression(expr.object);
+        token(expr.identifier);
+        code.invoke(INVOKESTATIC, RUNTIME, "checkFields", "(L" + OBJECT + ";L" + TOKEN + ";)L" + OBJECT + ";");
+        expression(expr.value);
+        cache(expr.cache);
+        token(expr.identifier);
+        code.invoke(INVOKESTATIC, RUNTIME, "setProperty", "(L" + OBJECT + ";L" + OBJECT + ";L" + CACHE + ";L" + TOKEN + ";)L" + OBJECT + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        loadVariable(expr.keyword, expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals == 0) {
+            stmt.statements.forEach(this::statement);
+            return null;
+        }
+        beginScope();
+        stmt.statements.forEach(this::statement);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        JitClassWriter.Label elseBranch = code.label();
+        JitClassWriter.Label end = code.label();
+        expression(stmt.condition);
+        truthy();
+        code.jump(IFEQ, elseBranch);
+        statement(stmt.thenBranch);
+        code.jump(GOTO, end);
+        code.mark(elseBranch);
+        if (stmt.elseBranch != null) statement(stmt.elseBranch);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        JitClassWriter.Label enclosingEnd = loopEnd;
+        JitClassWriter.Label start = code.label();
+        loopEnd = code.label();
+        code.mark(start);
+        expression(stmt.condition);
+        truthy();
+        code.jump(IFEQ, loopEnd);
+        statement(stmt.body);
+        code.jump(GOTO, start);
+        code.mark(loopEnd);
+        loopEnd = enclosingEnd;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loopEnd == null) throw new Unsupported();
+        code.jump(GOTO, loopEnd);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        expression(stmt.expression);
+        code.op(POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        expression(stmt.expression);
+        code.invoke(INVOKESTATIC, RUNTIME, "print", "(L" + OBJECT + ";)V");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.initializer instanceof Expr.Call call) {
+            call(call, true);
+        } else {
+            value(stmt.initializer);
+        }
+        code.op(ARETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        value(stmt.initializer);
+        declareLocal();
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported();
+    }
+}
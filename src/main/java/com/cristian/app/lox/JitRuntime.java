@@ -0,0 +1,153 @@
+package com.cristian.app.lox;
+
+import java.util.Arrays;
+
+/**
+ * Operations called from code generated by the {@link JitCompiler}. They mirror what the
+ * {@link Interpreter} does for the same nodes, errors included.
+ */
+final class JitRuntime {
+    private JitRuntime() {
+    }
+
+    static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double l && right instanceof Double r) return l + r;
+        if (left instanceof CharSequence l && right instanceof CharSequence r) return LoxString.concat(l, r);
+        throw new RuntimeError(operator, "Operands must be String or Numbers");
+    }
+
+    static Object subtract(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        return (Double) left - (Double) right;
+    }
+
+    static Object multiply(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        return (Double) left * (Double) right;
+    }
+
+    static Object divide(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        if ((Double) right == 0) throw new RuntimeError(operator, "Can't divide by zero.");
+        return (Double) left / (Double) right;
+    }
+
+    static Object less(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        return (Double) left < (Double) right;
+    }
+
+    static Object lessEqual(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        return (Double) left <= (Double) right;
+    }
+
+    static Object greater(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        return (Double) left > (Double) right;
+    }
+
+    static Object greaterEqual(Object left, Object right, Token operator) {
+        checkNumbers(left, right, operator);
+        return (Double) left >= (Double) right;
+    }
+
+    private static void checkNumbers(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(operator, "Operands must be both Numbers");
+    }
+
+    static Object negate(Object operand, Token operator) {
+        if (operand instanceof Double number) return -number;
+        throw new RuntimeError(operator, "Operand must be a number");
+    }
+
+    static Object getGlobal(Interpreter interpreter, Token identifier) {
+        return interpreter.globals.get(identifier);
+    }
+
+    static Object assignGlobal(Interpreter interpreter, Token identifier, Object value) {
+        interpreter.globals.assign(identifier, value);
+        return value;
+    }
+
+    static Object assignAt(Environment environment, int distance, int slot, Object value) {
+        environment.assignAt(distance, slot, value);
+        return value;
+    }
+
+    static Object call(Interpreter interpreter, Object callee, Object[] arguments, Token paren) {
+        LoxCallable function = Interpreter.callable(callee, arguments.length, paren);
+        return call(interpreter, function, null, arguments, paren);
+    }
+
+    private static Object call(Interpreter interpreter, LoxCallable function, LoxInstance receiver,
+                               Object[] arguments, Token paren) {
+        int count = arguments.length;
+        if (count > 4) {
+            if (receiver == null) return interpreter.call(function, Arrays.asList(arguments), paren);
+            return interpreter.invoke((Func) function, receiver, Arrays.asList(arguments), paren);
+        }
+        return interpreter.call(function, receiver, count,
+                count > 0 ? arguments[0] : null, count > 1 ? arguments[1] : null,
+                count > 2 ? arguments[2] : null, count > 3 ? arguments[3] : null, paren);
+    }
+
+    private static void checkArity(LoxCallable function, Object[] arguments, Token paren) {
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got "
+                    + arguments.length + ".");
+        }
+    }
+
+    // Tail calls to Lox functions are handed back for Func to make, like the interpreter does.
+    static Object tailCall(Interpreter interpreter, Object callee, Object[] arguments, Token paren) {
+        if (!(callee instanceof Func function)) return call(interpreter, callee, arguments, paren);
+        checkArity(function, arguments, paren);
+        return new Interpreter.TailCall(function, null, arguments, paren);
+    }
+
+    static Object tailInvokeMethod(Object object, Object callee, Interpreter interpreter, Object[] arguments,
+                                   Token paren) {
+        if (!(callee instanceof Func method)) return invokeMethod(object, callee, interpreter, arguments, paren);
+        checkArity(method, arguments, paren);
+        LoxInstance receiver = method.isUnbound() ? (LoxInstance) object : null;
+        return new Interpreter.TailCall(method, receiver, arguments, paren);
+    }
+
+    // The unbound method for obj.name(...), or the value of the field to call instead.
+    static Object findMethod(Object object, PropertyCache cache, Token identifier) {
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeError(identifier, "Only instances have properties.");
+        }
+        Func method = cache.method(instance, identifier);
+        return method != null ? method : cache.get(instance, identifier);
+    }
+
+    static Object invokeMethod(Object object, Object callee, Interpreter interpreter, Object[] arguments, Token paren) {
+        if (callee instanceof Func method && method.isUnbound()) {
+            checkArity(method, arguments, paren);
+            return call(interpreter, method, (LoxInstance) object, arguments, paren);
+        }
+        return call(interpreter, callee, arguments, paren);
+    }
+
+    static Object getProperty(Object object, PropertyCache cache, Token identifier) {
+        if (object instanceof LoxInstance instance) return cache.get(instance, identifier);
+        throw new RuntimeError(identifier, "Only instances have properties.");
+    }
+
+    static Object checkFields(Object object, Token identifier) {
+        if (object instanceof LoxInstance) return object;
+        throw new RuntimeError(identifier, "Only instances have fields");
+    }
+
+    static Object setProperty(Object instance, Object value, PropertyCache cache, Token identifier) {
+        cache.set((LoxInstance) instance, identifier, value);
+        return value;
+    }
+
+    static void print(Object value) {
+        Output.print(value);
+    }
+}
@@ -1,8 +1,34 @@
 package com.cristian.app.lox;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Something Lox code can call. Calls with up to four arguments go through the fixed-arity entry
+ * points, which implementations override to take the arguments without a list; by default they
+ * fall back to {@link #call(Interpreter, List)}. Callers check the arity first.
+ */
 public interface LoxCallable {
     Object call(Interpreter interpreter, List<Object> arguments);
     int arity();
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, List.of());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, Arrays.asList(a, b, c, d));
+    }
 }
@@ -5,6 +5,7 @@ import java.util.Map;
 public class LoxClass {
     public final String identifier;
     public final Map<String, Func> methods;
+    final Shape emptyShape = new Shape();
 
     public LoxClass(String identifier, Map<String, Func> methods) {
         this.identifier = identifier;
@@ -1,14 +1,18 @@
 package com.cristian.app.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
+    private static final Object[] NO_FIELDS = new Object[0];
+
     final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    Shape shape;
+    Object[] fields = NO_FIELDS;
 
     public LoxInstance(LoxClass klass) {
         this.klass = klass;
+        this.shape = klass.emptyShape;
+        if (Metrics.enabled) Metrics.instances.increment();
     }
 
     @Override
@@ -19,15 +23,35 @@ public class LoxInstance {
     }
 
     public Object get(Token identifier) {
-        if (fields.containsKey(identifier.lexeme)) {
-            return fields.get(identifier.lexeme);
-        }
+        int offset = shape.offset(identifier.lexeme);
+        if (offset != -1) return fields[offset];
+        return method(identifier);
+    }
+
+    Object method(Token identifier) {
+        return findMethod(identifier).bind(this);
+    }
+
+    Func findMethod(Token identifier) {
         Func method = klass.findMethod(identifier.lexeme);
-        if (method != null) return method.bind(this);
+        if (method != null) return method;
         throw new RuntimeError(identifier, "Undefined property '" + identifier.lexeme + "'.");
     }
 
     public void set(Token identifier, Object value) {
-        fields.put(identifier.lexeme, value);
+        int offset = shape.offset(identifier.lexeme);
+        if (offset != -1) {
+            fields[offset] = value;
+        } else {
+            store(shape.with(identifier.lexeme), shape.size(), value);
+        }
+    }
+
+    void store(Shape shape, int offset, Object value) {
+        if (offset >= fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+        }
+        fields[offset] = value;
+        this.shape = shape;
     }
 }
@@ -0,0 +1,71 @@
+package com.cristian.app.lox;
+
+/**
+ * Result of a string concatenation too long to copy on every {@code +}. A LoxString is a prefix of
+ * a builder it may share with other LoxStrings. Appending to the newest of them grows the builder in
+ * place, so {@code s = s + piece} in a loop takes linear time instead of copying s each round. The
+ * characters become a String only when printed or compared, and that String is kept.
+ * <p>
+ * Lox strings are therefore either a String or a LoxString. Both are CharSequences, and no other
+ * runtime value is.
+ */
+final class LoxString implements CharSequence {
+    // Shorter results are plain Strings, so short keys and labels stay cheap to compare.
+    private static final int SHORT = 64;
+
+    private final StringBuilder chars;
+    private final int length;
+    private String flat;
+
+    private LoxString(StringBuilder chars) {
+        this.chars = chars;
+        this.length = chars.length();
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (length < SHORT) return left.toString().concat(right.toString());
+        if (left instanceof LoxString rope && rope.chars.length() == rope.length) {
+            appendTo(rope.chars, right);
+            return new LoxString(rope.chars);
+        }
+        StringBuilder chars = new StringBuilder(length * 2);
+        appendTo(chars, left);
+        appendTo(chars, right);
+        return new LoxString(chars);
+    }
+
+    private static void appendTo(StringBuilder chars, CharSequence string) {
+        if (string instanceof LoxString rope) {
+            chars.append(rope.chars, 0, rope.length);
+        } else {
+            chars.append((String) string);
+        }
+    }
+
+    static boolean equal(CharSequence left, CharSequence right) {
+        return left.length() == right.length() && left.toString().equals(right.toString());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) throw new IndexOutOfBoundsException(index);
+        return chars.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flat = chars.substring(0, length);
+        return flat;
+    }
+}
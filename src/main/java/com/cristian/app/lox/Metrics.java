@@ -0,0 +1,240 @@
+package com.cristian.app.lox;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what the interpreters do and how long each stage of running a program takes. They
+ * are only updated once {@link #enable()} has been called, so the hot paths pay a single check of a
+ * static flag otherwise. Counters are {@link LongAdder}s, which a reader can sum at any time without
+ * slowing down the threads that increment them.
+ */
+public final class Metrics {
+    static boolean enabled = false;
+
+    static final LongAdder calls = new LongAdder();
+    static final LongAdder environments = new LongAdder();
+    static final LongAdder instances = new LongAdder();
+    static final LongAdder propertyLookups = new LongAdder();
+    static final LongAdder propertyCacheMisses = new LongAdder();
+    static final LongAdder runtimeErrors = new LongAdder();
+
+    // Upper bounds of the stage duration buckets, in seconds.
+    private static final double[] BUCKETS = {0.0001, 0.001, 0.01, 0.1, 1, 10};
+    private static final Map<String, Histogram> stages = new LinkedHashMap<>();
+
+    private static ScheduledExecutorService exporter;
+
+    private Metrics() {
+    }
+
+    private static class Histogram {
+        final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void record(long elapsedNanos) {
+            double seconds = elapsedNanos / 1e9;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            nanos.add(elapsedNanos);
+        }
+    }
+
+    public interface MetricsMXBean {
+        long getFunctionCalls();
+
+        long getEnvironmentAllocations();
+
+        long getInstanceCreations();
+
+        long getPropertyLookups();
+
+        long getPropertyCacheMisses();
+
+        long getRuntimeErrors();
+
+        Map<String, Double> getStageSeconds();
+
+        Map<String, Long> getStageCounts();
+    }
+
+    private static class MBean implements MetricsMXBean {
+        @Override
+        public long getFunctionCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getEnvironmentAllocations() {
+            return environments.sum();
+        }
+
+        @Override
+        public long getInstanceCreations() {
+            return instances.sum();
+        }
+
+        @Override
+        public long getPropertyLookups() {
+            return propertyLookups.sum();
+        }
+
+        @Override
+        public long getPropertyCacheMisses() {
+            return propertyCacheMisses.sum();
+        }
+
+        @Override
+        public long getRuntimeErrors() {
+            return runtimeErrors.sum();
+        }
+
+        @Override
+        public Map<String, Double> getStageSeconds() {
+            Map<String, Double> seconds = new LinkedHashMap<>();
+            synchronized (stages) {
+                stages.forEach((stage, histogram) -> seconds.put(stage, histogram.nanos.sum() / 1e9));
+            }
+            return seconds;
+        }
+
+        @Override
+        public Map<String, Long> getStageCounts() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            synchronized (stages) {
+                stages.forEach((stage, histogram) -> counts.put(stage, histogram.count.sum()));
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Starts collecting and publishes the metrics as the MBean com.cristian.app.lox:type=Metrics.
+     */
+    public static void enable() {
+        if (enabled) return;
+        enabled = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new MBean(), new ObjectName("com.cristian.app.lox:type=Metrics"));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records how long a stage of running a program took.
+     */
+    public static void recordStage(String stage, long elapsedNanos) {
+        if (!enabled) return;
+        Histogram histogram;
+        synchronized (stages) {
+            histogram = stages.computeIfAbsent(stage, s -> new Histogram());
+        }
+        histogram.record(elapsedNanos);
+    }
+
+    public static void runtimeError() {
+        if (enabled) runtimeErrors.increment();
+    }
+
+    /**
+     * The metrics in the Prometheus text exposition format.
+     */
+    public static String prometheus() {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        counter(out, "lox_function_calls_total", "Lox functions and methods called.", calls);
+        counter(out, "lox_environment_allocations_total", "Local environments allocated.", environments);
+        counter(out, "lox_instance_creations_total", "Class instances created.", instances);
+        counter(out, "lox_property_lookups_total", "Property reads, writes and method lookups.", propertyLookups);
+        counter(out, "lox_property_cache_misses_total", "Property accesses not found in the inline cache.",
+                propertyCacheMisses);
+        counter(out, "lox_runtime_errors_total", "Runtime errors reported.", runtimeErrors);
+        out.println("# HELP lox_stage_seconds Time spent in each stage of running a program.");
+        out.println("# TYPE lox_stage_seconds histogram");
+        synchronized (stages) {
+            stages.forEach((stage, histogram) -> {
+                long cumulative = 0;
+                for (int i = 0; i < BUCKETS.length; i++) {
+                    cumulative += histogram.buckets[i].sum();
+                    out.println("lox_stage_seconds_bucket{stage=\"" + stage + "\",le=\"" + BUCKETS[i] + "\"} "
+                            + cumulative);
+                }
+                long count = histogram.count.sum();
+                out.println("lox_stage_seconds_bucket{stage=\"" + stage + "\",le=\"+Inf\"} " + count);
+                out.println("lox_stage_seconds_sum{stage=\"" + stage + "\"} " + histogram.nanos.sum() / 1e9);
+                out.println("lox_stage_seconds_count{stage=\"" + stage + "\"} " + count);
+            });
+        }
+        out.flush();
+        return text.toString();
+    }
+
+    private static void counter(PrintWriter out, String name, String help, LongAdder value) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " counter");
+        out.println(name + " " + value.sum());
+    }
+
+    /**
+     * Writes the metrics to the file every given number of seconds from a background thread.
+     */
+    public static void exportPeriodically(Path path, long periodSeconds) {
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lox-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleAtFixedRate(() -> {
+            try {
+                export(path);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + path + ": " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic export and writes the final values.
+     */
+    public static void stopExport(Path path) throws IOException {
+        if (exporter != null) exporter.shutdownNow();
+        export(path);
+    }
+
+    // Readers of the file never see it half written.
+    private static void export(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        Files.writeString(temporary, prometheus());
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
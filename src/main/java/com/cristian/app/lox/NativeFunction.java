@@ -0,0 +1,116 @@
+package com.cristian.app.lox;
+
+import java.util.List;
+
+/**
+ * Function written in Java that Lox code calls like any other. The body is a lambda taking exactly
+ * the function's parameters, so a call through the entry point of its arity hands the arguments
+ * straight to it. Bodies reject arguments they can't handle with an IllegalArgumentException, which
+ * the call reports as a runtime error at the call site.
+ */
+public abstract class NativeFunction implements LoxCallable {
+    public interface Body0 {
+        Object call();
+    }
+
+    public interface Body1 {
+        Object call(Object a);
+    }
+
+    public interface Body2 {
+        Object call(Object a, Object b);
+    }
+
+    public interface Body3 {
+        Object call(Object a, Object b, Object c);
+    }
+
+    final String name;
+    private final int arity;
+
+    private NativeFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    public static NativeFunction of(String name, Body0 body) {
+        return new NativeFunction(name, 0) {
+            @Override
+            Object invoke(List<Object> arguments) {
+                return body.call();
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
+                return body.call();
+            }
+        };
+    }
+
+    public static NativeFunction of(String name, Body1 body) {
+        return new NativeFunction(name, 1) {
+            @Override
+            Object invoke(List<Object> arguments) {
+                return body.call(arguments.get(0));
+            }
+
+            @Override
+            public Object call1(Interpreter interpreter, Object a) {
+                return body.call(a);
+            }
+        };
+    }
+
+    public static NativeFunction of(String name, Body2 body) {
+        return new NativeFunction(name, 2) {
+            @Override
+            Object invoke(List<Object> arguments) {
+                return body.call(arguments.get(0), arguments.get(1));
+            }
+
+            @Override
+            public Object call2(Interpreter interpreter, Object a, Object b) {
+                return body.call(a, b);
+            }
+        };
+    }
+
+    public static NativeFunction of(String name, Body3 body) {
+        return new NativeFunction(name, 3) {
+            @Override
+            Object invoke(List<Object> arguments) {
+                return body.call(arguments.get(0), arguments.get(1), arguments.get(2));
+            }
+
+            @Override
+            public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+                return body.call(a, b, c);
+            }
+        };
+    }
+
+    abstract Object invoke(List<Object> arguments);
+
+    Object call(List<Object> arguments, Token paren) {
+        try {
+            return invoke(arguments);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeError(paren, e.getMessage());
+        }
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return invoke(arguments);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn " + name + ">";
+    }
+}
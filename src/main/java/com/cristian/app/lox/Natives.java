@@ -0,0 +1,65 @@
+package com.cristian.app.lox;
+
+import java.util.List;
+
+/**
+ * Standard library every engine defines as globals before running a program.
+ */
+final class Natives {
+    static final List<NativeFunction> standard = List.of(
+            // Seconds from an arbitrary origin, for timing.
+            NativeFunction.of("clock", () -> System.nanoTime() / 1e9),
+            NativeFunction.of("len", s -> (double) string(s).length()),
+            NativeFunction.of("substring", (s, start, end) -> substring(string(s), start, end)),
+            // The number a string spells, or nil.
+            NativeFunction.of("parseNumber", s -> parseNumber(string(s))),
+            NativeFunction.of("sqrt", x -> Math.sqrt(number(x))),
+            NativeFunction.of("floor", x -> Math.floor(number(x))),
+            NativeFunction.of("abs", x -> Math.abs(number(x))),
+            NativeFunction.of("min", (x, y) -> Math.min(number(x), number(y))),
+            NativeFunction.of("max", (x, y) -> Math.max(number(x), number(y))),
+            NativeFunction.of("pow", (x, y) -> Math.pow(number(x), number(y))));
+
+    private Natives() {
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Double number) return number;
+        throw new IllegalArgumentException("Argument must be a number.");
+    }
+
+    private static CharSequence string(Object value) {
+        if (value instanceof CharSequence string) return string;
+        throw new IllegalArgumentException("Argument must be a string.");
+    }
+
+    private static String substring(CharSequence string, Object start, Object end) {
+        double from = number(start);
+        double to = number(end);
+        if (from != Math.rint(from) || to != Math.rint(to) || from < 0 || from > to || to > string.length()) {
+            throw new IllegalArgumentException("Substring range out of bounds.");
+        }
+        return string.subSequence((int) from, (int) to).toString();
+    }
+
+    // Takes what the scanner reads as a number literal: digits, then optionally a dot and more digits.
+    private static Double parseNumber(CharSequence string) {
+        int length = string.length();
+        int i = digits(string, 0);
+        if (i == 0) return null;
+        if (i < length && string.charAt(i) == '.') {
+            int end = digits(string, i + 1);
+            if (end == i + 1) return null;
+            i = end;
+        }
+        if (i != length) return null;
+        return Double.parseDouble(string.toString());
+    }
+
+    // The index of the first character from start on that isn't a digit.
+    private static int digits(CharSequence string, int start) {
+        int i = start;
+        while (i < string.length() && string.charAt(i) >= '0' && string.charAt(i) <= '9') i++;
+        return i;
+    }
+}
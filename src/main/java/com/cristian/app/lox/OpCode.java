@@ -0,0 +1,49 @@
+package com.cristian.app.lox;
+
+/**
+ * Instruction set of the bytecode {@link VM}. Operands follow the opcode byte: constant and name
+ * indexes and jump offsets take two bytes, local, upvalue and argument counts take one.
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte GET_LOCAL = 5;
+    static final byte SET_LOCAL = 6;
+    static final byte GET_GLOBAL = 7;
+    static final byte DEFINE_GLOBAL = 8;
+    static final byte SET_GLOBAL = 9;
+    static final byte GET_UPVALUE = 10;
+    static final byte SET_UPVALUE = 11;
+    static final byte GET_PROPERTY = 12;
+    static final byte SET_PROPERTY = 13;
+    static final byte EQUAL = 14;
+    static final byte GREATER = 15;
+    static final byte GREATER_EQUAL = 16;
+    static final byte LESS = 17;
+    static final byte LESS_EQUAL = 18;
+    static final byte ADD = 19;
+    static final byte SUBTRACT = 20;
+    static final byte MULTIPLY = 21;
+    static final byte DIVIDE = 22;
+    static final byte NOT = 23;
+    static final byte NEGATE = 24;
+    static final byte PRINT = 25;
+    static final byte JUMP = 26;
+    static final byte JUMP_IF_FALSE = 27;
+    static final byte LOOP = 28;
+    static final byte CALL = 29;
+    static final byte INVOKE = 30;
+    static final byte NEW = 31;
+    static final byte CLOSURE = 32;
+    static final byte CLOSE_UPVALUE = 33;
+    static final byte RETURN = 34;
+    static final byte CLASS = 35;
+    static final byte METHOD = 36;
+    static final byte BEGIN_NEW = 37;
+
+    private OpCode() {
+    }
+}
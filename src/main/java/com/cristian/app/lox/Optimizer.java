@@ -0,0 +1,462 @@
+package com.cristian.app.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies a resolved program before it runs. Operators whose operands are literals are folded
+ * into a literal, locals that are initialized with a literal and never assigned again are replaced
+ * by it, and statements that can never run are dropped: untaken branches of constant conditions,
+ * loops whose condition is constant false and anything after a return or break. Folding only
+ * happens where the result is the same as at runtime, so operations that would raise an error are
+ * left for the interpreter to report.
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // For every open scope, the literal each slot holds for good, or null if it may change. Slots
+    // follow the resolver, so declarations dropped as unreachable don't move the ones after them.
+    private final List<List<Expr.Literal>> scopes = new ArrayList<>();
+    private int removed = 0;
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        return statements(statements);
+    }
+
+    /**
+     * Number of AST nodes the optimizer removed so far.
+     */
+    public int removed() {
+        return removed;
+    }
+
+    private List<Stmt> statements(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt stmt = statements.get(i);
+            Stmt result = stmt.accept(this);
+            if (result != null) optimized.add(result);
+            if (stmt instanceof Stmt.Return || stmt instanceof Stmt.Break) {
+                for (Stmt unreachable : statements.subList(i + 1, statements.size())) {
+                    removed += count(unreachable);
+                }
+                break;
+            }
+        }
+        return optimized;
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(new ArrayList<>());
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    private void declare(int slot, Expr.Literal value) {
+        if (scopes.isEmpty() || slot == -1) return;
+        List<Expr.Literal> scope = scopes.get(scopes.size() - 1);
+        while (scope.size() <= slot) scope.add(null);
+        scope.set(slot, value);
+    }
+
+    private Expr.Literal constantAt(int depth, int slot) {
+        if (depth == -1 || depth >= scopes.size()) return null;
+        List<Expr.Literal> scope = scopes.get(scopes.size() - 1 - depth);
+        return slot < scope.size() ? scope.get(slot) : null;
+    }
+
+    private Expr literal(Object value, Expr replaced) {
+        removed += count(replaced) - 1;
+        return new Expr.Literal(value);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+        Expr.Assign assign = new Expr.Assign(expr.identifier, value);
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal literal) {
+            boolean shortCircuits = expr.operator.type == TokenType.OR
+                    ? Interpreter.isTruthy(literal.value) : !Interpreter.isTruthy(literal.value);
+            Expr result = shortCircuits ? left : right;
+            removed += 1 + count(shortCircuits ? right : left);
+            return result;
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal l && right instanceof Expr.Literal r) {
+            Object value = fold(expr.operator.type, l.value, r.value);
+            if (value != null) return literal(value, new Expr.Binary(left, expr.operator, right));
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // The value of the operation, or null if it has to be left to the interpreter.
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL -> {
+                return Interpreter.isEqual(left, right);
+            }
+            case BANG_EQUAL -> {
+                return !Interpreter.isEqual(left, right);
+            }
+            case PLUS -> {
+                if (left instanceof String l && right instanceof String r) return l + r;
+            }
+        }
+        if (!(left instanceof Double l) || !(right instanceof Double r)) return null;
+        return switch (operator) {
+            case PLUS -> l + r;
+            case MINUS -> l - r;
+            case STAR -> l * r;
+            case SLASH -> r == 0 ? null : l / r;
+            case LESS -> l < r;
+            case LESS_EQUAL -> l <= r;
+            case GREATER -> l > r;
+            case GREATER_EQUAL -> l >= r;
+            default -> null;
+        };
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = expressions(expr.arguments);
+        if (callee == expr.callee && arguments == expr.arguments) return expr;
+        return new Expr.Call(callee, expr.paren, arguments);
+    }
+
+    // The optimized expressions, or the same list if none of them changed.
+    private List<Expr> expressions(List<Expr> expressions) {
+        List<Expr> optimized = new ArrayList<>();
+        boolean changed = false;
+        for (Expr expr : expressions) {
+            Expr result = optimize(expr);
+            changed |= result != expr;
+            optimized.add(result);
+        }
+        return changed ? optimized : expressions;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        removed++;
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal literal) {
+            if (expr.operator.type == TokenType.BANG) {
+                return literal(!Interpreter.isTruthy(literal.value), new Expr.Unary(expr.operator, right));
+            }
+            if (expr.operator.type == TokenType.MINUS && literal.value instanceof Double number) {
+                return literal(-number, new Expr.Unary(expr.operator, right));
+            }
+        }
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        Expr.Literal constant = constantAt(expr.depth, expr.slot);
+        if (constant == null) return expr;
+        return new Expr.Literal(constant.value);
+    }
+
+    @Override
+    public Expr visitClassExpr(Expr.Class expr) {
+        List<Expr> arguments = expressions(expr.arguments);
+        if (arguments == expr.arguments) return expr;
+        Expr.Class klass = new Expr.Class(expr.identifier, arguments);
+        klass.depth = expr.depth;
+        klass.slot = expr.slot;
+        return klass;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+        if (object == expr.object) return expr;
+        return new Expr.Get(object, expr.identifier);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expr.Set(object, expr.identifier, value);
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals > 0) beginScope();
+        List<Stmt> statements = statements(stmt.statements);
+        if (stmt.locals > 0) endScope();
+        Stmt.Block block = new Stmt.Block(statements);
+        block.locals = stmt.locals;
+        return block;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal) {
+            boolean taken = Interpreter.isTruthy(literal.value);
+            Stmt untaken = taken ? stmt.elseBranch : stmt.thenBranch;
+            removed += 2 + (untaken == null ? 0 : count(untaken));
+            return optimize(taken ? stmt.thenBranch : stmt.elseBranch);
+        }
+        return new Stmt.If(condition, branch(stmt.thenBranch), optimize(stmt.elseBranch));
+    }
+
+    // A statement that cannot be dropped, as it is the body of an if or a loop.
+    private Stmt branch(Stmt stmt) {
+        Stmt optimized = optimize(stmt);
+        if (optimized != null) return optimized;
+        removed--;
+        return new Stmt.Block(List.of());
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal && !Interpreter.isTruthy(literal.value)) {
+            removed += 2 + count(stmt.body);
+            return null;
+        }
+        return new Stmt.While(condition, branch(stmt.body));
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression instanceof Expr.Literal) {
+            removed += 2;
+            return null;
+        }
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.name, optimize(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        Expr.Literal constant = null;
+        if (!stmt.reassigned) {
+            constant = initializer instanceof Expr.Literal literal ? literal : null;
+            if (initializer == null) constant = new Expr.Literal(null);
+        }
+        declare(stmt.slot, constant);
+        Stmt.Var var = new Stmt.Var(stmt.identifier, initializer);
+        var.reassigned = stmt.reassigned;
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        return function(stmt);
+    }
+
+    private Stmt.Function function(Stmt.Function stmt) {
+        beginScope();
+        List<Stmt> body = statements(stmt.body);
+        endScope();
+        Stmt.Function function = new Stmt.Function(stmt.identifier, stmt.params, body);
+        function.slot = stmt.slot;
+        function.locals = stmt.locals;
+        return function;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        List<Stmt.Function> methods = new ArrayList<>();
+        stmt.methods.forEach(method -> methods.add(function(method)));
+        Stmt.Class klass = new Stmt.Class(stmt.identifier, methods);
+        klass.slot = stmt.slot;
+        return klass;
+    }
+
+    private static int count(Stmt stmt) {
+        return stmt == null ? 0 : stmt.accept(COUNTER);
+    }
+
+    private static int count(Expr expr) {
+        return expr == null ? 0 : expr.accept(COUNTER);
+    }
+
+    private static int count(List<? extends Stmt> statements) {
+        return statements.stream().mapToInt(Optimizer::count).sum();
+    }
+
+    private static final Counter COUNTER = new Counter();
+
+    // Counts the nodes of a tree, to report how many the optimizer dropped.
+    private static class Counter implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        private int all(List<Expr> expressions) {
+            return expressions.stream().mapToInt(Optimizer::count).sum();
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return 1 + count(expr.value);
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            return 1 + count(expr.left) + count(expr.right);
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            return 1 + count(expr.left) + count(expr.right);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            return 1 + count(expr.callee) + all(expr.arguments);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return 1 + count(expr.expression);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            return 1 + count(expr.right);
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitClassExpr(Expr.Class expr) {
+            return 1 + all(expr.arguments);
+        }
+
+        @Override
+        public Integer visitGetExpr(Expr.Get expr) {
+            return 1 + count(expr.object);
+        }
+
+        @Override
+        public Integer visitSetExpr(Expr.Set expr) {
+            return 1 + count(expr.object) + count(expr.value);
+        }
+
+        @Override
+        public Integer visitThisExpr(Expr.This expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            return 1 + count(stmt.statements);
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            return 1 + count(stmt.condition) + count(stmt.thenBranch) + count(stmt.elseBranch);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            return 1 + count(stmt.condition) + count(stmt.body);
+        }
+
+        @Override
+        public Integer visitBreakStmt(Stmt.Break stmt) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            return 1 + count(stmt.expression);
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            return 1 + count(stmt.expression);
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            return 1 + count(stmt.initializer);
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            return 1 + count(stmt.initializer);
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            return 1 + count(stmt.body);
+        }
+
+        @Override
+        public Integer visitClassStmt(Stmt.Class stmt) {
+            return 1 + count(stmt.methods);
+        }
+    }
+}
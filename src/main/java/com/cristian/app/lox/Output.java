@@ -0,0 +1,126 @@
+package com.cristian.app.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Where print statements write. Lines are gathered in an unsynchronized buffer and handed to the
+ * target in large chunks, when the flush policy says so and whenever a program ends. Numbers are
+ * written digit by digit into the buffer instead of going through a String. Every engine prints
+ * through {@link #current()}, which can be replaced with {@link #use(Output)}.
+ */
+public final class Output {
+    public enum Flush {
+        // After every line, for a terminal.
+        LINE,
+        // Whenever the buffer is full.
+        SIZE,
+        // Only once the program ends, holding all of its output in memory.
+        EXIT
+    }
+
+    private static Output current = new Output(System.console() != null ? Flush.LINE : Flush.SIZE, 1 << 16);
+
+    private final Appendable target;
+    private final Flush flush;
+    private final int size;
+    private char[] buffer;
+    private int length = 0;
+
+    /**
+     * Output to whatever System.out is when the buffer is flushed, so it follows System.setOut.
+     */
+    public Output(Flush flush, int size) {
+        this(null, flush, size);
+    }
+
+    public Output(Appendable target, Flush flush, int size) {
+        this.target = target;
+        this.flush = flush;
+        this.size = size;
+        this.buffer = new char[size];
+    }
+
+    public static Output current() {
+        return current;
+    }
+
+    public static void use(Output output) {
+        current.flush();
+        current = output;
+    }
+
+    static void print(Object value) {
+        current.println(value);
+    }
+
+    void println(Object value) {
+        if (value == null) {
+            append("nil");
+        } else if (value instanceof Double number) {
+            append(number);
+        } else {
+            append(value.toString());
+        }
+        append('\n');
+        if (flush == Flush.LINE || (flush == Flush.SIZE && length >= size)) flush();
+    }
+
+    public void flush() {
+        if (length == 0) return;
+        try {
+            if (target == null) {
+                System.out.append(CharBuffer.wrap(buffer, 0, length));
+                System.out.flush();
+            } else {
+                target.append(CharBuffer.wrap(buffer, 0, length));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            length = 0;
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void append(char c) {
+        ensure(1);
+        buffer[length++] = c;
+    }
+
+    private void append(String text) {
+        ensure(text.length());
+        text.getChars(0, text.length(), buffer, length);
+        length += text.length();
+    }
+
+    // Whole numbers Double.toString would print as "n.0" are written as digits without the ".0".
+    // The rest keep Double.toString's form.
+    private void append(double number) {
+        if (number != Math.rint(number) || Math.abs(number) >= 1e7) {
+            append(Double.toString(number));
+            return;
+        }
+        ensure(9);
+        if (Double.doubleToRawLongBits(number) < 0) {
+            buffer[length++] = '-';
+            number = -number;
+        }
+        long digits = (long) number;
+        int count = 1;
+        for (long rest = digits; rest >= 10; rest /= 10) count++;
+        int end = length + count;
+        length = end;
+        do {
+            buffer[--end] = (char) ('0' + digits % 10);
+            digits /= 10;
+        } while (digits != 0);
+    }
+}
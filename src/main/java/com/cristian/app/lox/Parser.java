@@ -12,14 +12,22 @@ public class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
+    // Set when the tokens are scanned as the parser reaches the end of the buffer.
+    private final Scanner scanner;
+    private TokenBuffer tokens;
     private int current = 0;
     private int loopDepth = 0;
 
-    public Parser(List<Token> tokens) {
+    public Parser(TokenBuffer tokens) {
+        this.scanner = null;
         this.tokens = tokens;
     }
 
+    public Parser(Scanner scanner) {
+        this.scanner = scanner;
+        this.tokens = scanner.refill(0);
+    }
+
     public List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
         while (!isAtEnd()) {
@@ -86,7 +94,7 @@ public class Parser {
     }
 
     private Stmt.Function funStatement() {
-        Token identifier = new Token(IDENTIFIER, "", null, tokens.get(current).line);
+        Token identifier = new Token(IDENTIFIER, "", null, tokens.line(current));
         if (match(IDENTIFIER)) {
             identifier = previous();
         }
@@ -316,7 +324,7 @@ public class Parser {
         if (match(FALSE)) return new Expr.Literal(false);
         if (match(TRUE)) return new Expr.Literal(true);
         if (match(NIL)) return new Expr.Literal(null);
-        if (match(NUMBER, STRING)) return new Expr.Literal(previous().literal);
+        if (match(NUMBER, STRING)) return new Expr.Literal(tokens.literal(current - 1));
         if (match(NEW)) return classExpression();
         if (match(IDENTIFIER)) return new Expr.Variable(previous());
         if (match(THIS)) return new Expr.This(previous());
@@ -353,7 +361,7 @@ public class Parser {
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
-                advance();
+                step();
                 return true;
             }
         }
@@ -361,37 +369,48 @@ public class Parser {
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        step();
         return previous();
     }
 
+    // Moves past the current token without making a Token of it. The previous token is kept when
+    // the buffer is refilled.
+    private void step() {
+        if (isAtEnd()) return;
+        current++;
+        if (current == tokens.size()) {
+            tokens = scanner.refill(current - 1);
+            current = 1;
+        }
+    }
+
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.type(current) == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private void synchronize() {
-        advance();
+        step();
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-            switch (peek().type) {
+            if (tokens.type(current - 1) == SEMICOLON) return;
+            switch (tokens.type(current)) {
                 case CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN -> {
                     return;
                 }
             }
-            advance();
+            step();
         }
     }
 }
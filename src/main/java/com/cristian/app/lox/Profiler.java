@@ -0,0 +1,126 @@
+package com.cristian.app.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Sampling profiler for Lox code. The interpreter keeps a shadow stack of the Lox functions being
+ * called, each with the line it was called from, and a timer thread samples it. Samples are written
+ * as folded stacks, one line per distinct stack followed by its count, which is what flame graph
+ * tools read.
+ */
+public class Profiler {
+    private static final String ROOT = "<script>";
+
+    private final long intervalMillis;
+    private String[] names = new String[64];
+    private int[] lines = new int[64];
+    private volatile int depth = 0;
+
+    // Only touched by the sampling thread while it runs.
+    private final Map<String, Integer> stacks = new HashMap<>();
+    private final Map<String, Integer> self = new HashMap<>();
+    private final Map<String, Integer> total = new HashMap<>();
+    private int samples = 0;
+    private final Thread sampler;
+
+    public Profiler(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        this.sampler = new Thread(this::sample, "lox-profiler");
+        this.sampler.setDaemon(true);
+    }
+
+    public void start() {
+        sampler.start();
+    }
+
+    public void stop() {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void enter(LoxCallable function, int line) {
+        if (depth == names.length) {
+            names = Arrays.copyOf(names, depth * 2);
+            lines = Arrays.copyOf(lines, depth * 2);
+        }
+        names[depth] = function instanceof Func func ? func.name() : function.toString();
+        lines[depth] = line;
+        depth++;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    private void sample() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            record();
+        }
+    }
+
+    // Reads the shadow stack without stopping the interpreter, so a sample taken right as a call
+    // starts or ends may miss that frame.
+    private void record() {
+        int size = depth;
+        String[] frames = names;
+        int[] callLines = lines;
+        size = Math.min(size, Math.min(frames.length, callLines.length));
+        StringBuilder stack = new StringBuilder(ROOT);
+        Set<String> seen = new HashSet<>();
+        String leaf = ROOT;
+        for (int i = 0; i < size; i++) {
+            String name = frames[i];
+            if (name == null) break;
+            stack.append(';').append(name).append(':').append(callLines[i]);
+            if (seen.add(name)) total.merge(name, 1, Integer::sum);
+            leaf = name;
+        }
+        total.merge(ROOT, 1, Integer::sum);
+        self.merge(leaf, 1, Integer::sum);
+        stacks.merge(stack.toString(), 1, Integer::sum);
+        samples++;
+    }
+
+    /**
+     * Writes the samples as folded stacks, frames named function:line with the line of the call.
+     */
+    public void writeFolded(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            stacks.forEach((stack, count) -> writer.println(stack + " " + count));
+        }
+    }
+
+    /**
+     * Prints the functions with the most samples, where self counts samples taken in the function
+     * itself and total also those taken in the functions it called.
+     */
+    public void printTop(PrintStream out, int limit) {
+        out.println("Profile: " + samples + " samples every " + intervalMillis + " ms");
+        out.printf("%8s %8s  %s%n", "self", "total", "function");
+        List<String> functions = new ArrayList<>(total.keySet());
+        functions.sort(Comparator.comparing((String f) -> self.getOrDefault(f, 0)).reversed()
+                .thenComparing(Comparator.comparing(total::get).reversed()));
+        for (String function : functions.subList(0, Math.min(limit, functions.size()))) {
+            out.printf("%7.1f%% %7.1f%%  %s%n", percent(self.getOrDefault(function, 0)),
+                    percent(total.get(function)), function);
+        }
+    }
+
+    private double percent(int count) {
+        return samples == 0 ? 0 : 100.0 * count / samples;
+    }
+}
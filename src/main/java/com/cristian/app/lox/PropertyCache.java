@@ -0,0 +1,78 @@
+package com.cristian.app.lox;
+
+/**
+ * Inline cache of a property access site. It remembers, for the last few shapes seen at the site,
+ * either the offset of the field or the method the name resolves to, and for a set that adds the
+ * field, the shape the instance moves to. Sites that see more shapes than the cache holds look the
+ * property up every time.
+ */
+final class PropertyCache {
+    private static final int ENTRIES = 4;
+
+    private final Shape[] shapes = new Shape[ENTRIES];
+    private final Shape[] targets = new Shape[ENTRIES];
+    private final int[] offsets = new int[ENTRIES];
+    private final Func[] methods = new Func[ENTRIES];
+    private int size = 0;
+
+    Object get(LoxInstance instance, Token identifier) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        int entry = lookup(instance, identifier);
+        int offset = entry != -1 ? offsets[entry] : instance.shape.offset(identifier.lexeme);
+        if (offset != -1) return instance.fields[offset];
+        Func method = entry != -1 ? methods[entry] : instance.findMethod(identifier);
+        return method.bind(instance);
+    }
+
+    /**
+     * The unbound method a call through this site should invoke on the instance, or null when the
+     * name is a field, whose value is then called instead.
+     */
+    Func method(LoxInstance instance, Token identifier) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        int entry = lookup(instance, identifier);
+        if (entry != -1) return methods[entry];
+        if (instance.shape.offset(identifier.lexeme) != -1) return null;
+        return instance.findMethod(identifier);
+    }
+
+    private int lookup(LoxInstance instance, Token identifier) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < size; i++) {
+            if (shapes[i] == shape) return i;
+        }
+        if (Metrics.enabled) Metrics.propertyCacheMisses.increment();
+        if (size == ENTRIES) return -1;
+        int offset = shape.offset(identifier.lexeme);
+        Func method = offset == -1 ? instance.findMethod(identifier) : null;
+        return add(shape, shape, offset, method);
+    }
+
+    void set(LoxInstance instance, Token identifier, Object value) {
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        Shape shape = instance.shape;
+        for (int i = 0; i < size; i++) {
+            if (shapes[i] == shape) {
+                instance.store(targets[i], offsets[i], value);
+                return;
+            }
+        }
+        if (Metrics.enabled) Metrics.propertyCacheMisses.increment();
+        int offset = shape.offset(identifier.lexeme);
+        Shape target = shape;
+        if (offset == -1) {
+            offset = shape.size();
+            target = shape.with(identifier.lexeme);
+        }
+        if (size < ENTRIES) add(shape, target, offset, null);
+        instance.store(target, offset, value);
+    }
+
+    private int add(Shape shape, Shape target, int offset, Func method) {
+        shapes[size] = shape;
+        targets[size] = target;
+        offsets[size] = offset;
+        methods[size] = method;
+        return size++;
+    }
+}
@@ -8,14 +8,19 @@ import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
     private final Stack<Token> variablesUsed = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    private static class Local {
+        final int slot;
+        boolean defined = false;
+        Stmt.Var declaration;
+
+        Local(int slot) {
+            this.slot = slot;
+        }
     }
 
     public void resolve(List<Stmt> statements) {
@@ -36,7 +41,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.identifier);
+        expr.depth = resolveDepth(expr.identifier);
+        if (expr.depth != -1) {
+            Local local = localAt(expr.depth, expr.identifier);
+            expr.slot = local.slot;
+            if (local.declaration != null) local.declaration.reassigned = true;
+        }
         return null;
     }
 
@@ -80,25 +90,37 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.empty() && scopes.peek().get(expr.identifier.lexeme) == Boolean.FALSE) {
+        Local local = scopes.empty() ? null : scopes.peek().get(expr.identifier.lexeme);
+        if (local != null && !local.defined) {
             Lox.error(expr.identifier, "Can't read local variable in its own initializer.");
         }
-        resolveLocal(expr, expr.identifier);
+        expr.depth = resolveDepth(expr.identifier);
+        if (expr.depth != -1) expr.slot = slotAt(expr.depth, expr.identifier);
         return null;
     }
 
-    private void resolveLocal(Expr expr, Token identifier) {
+    private int resolveDepth(Token identifier) {
         if (!variablesUsed.empty()) variablesUsed.pop();
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(identifier.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+                return scopes.size() - 1 - i;
             }
         }
+        return -1;
+    }
+
+    private int slotAt(int depth, Token identifier) {
+        return localAt(depth, identifier).slot;
+    }
+
+    private Local localAt(int depth, Token identifier) {
+        return scopes.get(scopes.size() - 1 - depth).get(identifier.lexeme);
     }
 
     @Override
     public Void visitClassExpr(Expr.Class expr) {
+        expr.depth = resolveDepth(expr.identifier);
+        if (expr.depth != -1) expr.slot = slotAt(expr.depth, expr.identifier);
         expr.arguments.forEach(this::resolve);
         return null;
     }
@@ -122,18 +144,32 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword, "Can't use 'this' outside class.");
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = resolveDepth(expr.keyword);
+        if (expr.depth != -1) expr.slot = slotAt(expr.depth, expr.keyword);
         return null;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.statements.stream().noneMatch(Resolver::declares)) {
+            resolve(stmt.statements);
+            return null;
+        }
         beginScope();
         resolve(stmt.statements);
+        stmt.locals = scopes.peek().size();
         endScope();
         return null;
     }
 
+    // A block declaring nothing gets no scope of its own and runs in the enclosing frame. Besides
+    // statements of the block itself, a function may be declared as the branch of an if or a loop.
+    private static boolean declares(Stmt stmt) {
+        if (stmt instanceof Stmt.Var || stmt instanceof Stmt.Function || stmt instanceof Stmt.Class) return true;
+        if (stmt instanceof Stmt.If ifStmt) return declares(ifStmt.thenBranch) || declares(ifStmt.elseBranch);
+        return stmt instanceof Stmt.While loop && declares(loop.body);
+    }
+
     private void endScope() {
         scopes.pop();
     }
@@ -187,7 +223,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.identifier);
+        Local local = declare(stmt.identifier);
+        if (local != null) {
+            local.declaration = stmt;
+            stmt.slot = local.slot;
+        }
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -197,22 +237,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private void define(Token identifier) {
         if (scopes.empty()) return;
-        scopes.peek().put(identifier.lexeme, true);
+        scopes.peek().get(identifier.lexeme).defined = true;
     }
 
-    private void declare(Token identifier) {
-        if (scopes.empty()) return;
-        Map<String, Boolean> scope = scopes.peek();
+    // Slots are numbered in the order declarations appear in the source, and every declaration
+    // writes to its own slot, as declarations in branches and loops run zero or many times.
+    private Local declare(Token identifier) {
+        if (scopes.empty()) return null;
+        Map<String, Local> scope = scopes.peek();
         if (scope.containsKey(identifier.lexeme)) {
             Lox.error(identifier, "Already a variable with this name in this scope.");
+            return null;
         }
-        scope.put(identifier.lexeme, false);
+        Local local = new Local(scope.size());
+        scope.put(identifier.lexeme, local);
         variablesUsed.push(identifier);
+        return local;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.identifier);
+        Local local = declare(stmt.identifier);
+        if (local != null) stmt.slot = local.slot;
         define(stmt.identifier);
         resolveFunction(stmt, FunctionType.FUNCTION);
         return null;
@@ -221,10 +267,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitClassStmt(Stmt.Class stmt) {
         currentClass = ClassType.CLASS;
-        declare(stmt.identifier);
+        Local local = declare(stmt.identifier);
+        if (local != null) stmt.slot = local.slot;
         define(stmt.identifier);
-        beginScope();
-        scopes.peek().put("this", true);
         stmt.methods.forEach(method -> {
             FunctionType declaration = FunctionType.METHOD;
             if (method.identifier.lexeme.equals(stmt.identifier.lexeme)) {
@@ -232,7 +277,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             }
             resolveFunction(method, declaration);
         });
-        endScope();
         currentClass = ClassType.NONE;
         return null;
     }
@@ -241,11 +285,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = functionType;
         beginScope();
+        if (functionType != FunctionType.FUNCTION) {
+            Local self = new Local(0);
+            self.defined = true;
+            scopes.peek().put("this", self);
+        }
         for (Token param : function.params) {
             declare(param);
             define(param);
         }
         resolve(function.body);
+        function.locals = scopes.peek().size();
         endScope();
         currentFunction = enclosingFunction;
     }
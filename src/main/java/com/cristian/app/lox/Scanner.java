@@ -2,60 +2,183 @@ package com.cristian.app.lox;
 
 import com.cristian.app.Lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.Map;
 
 import static com.cristian.app.lox.TokenType.*;
 
+/**
+ * Reads the source through a sliding window into a {@link TokenBuffer}, either all at once or a
+ * batch at a time as the parser needs them, so only the characters of the token being scanned
+ * have to be kept in memory. The window only grows past its initial size for a token longer than
+ * it, like a long string literal. Characters are classified through a table for the first 256 code
+ * points, with the same results as the {@link Character} methods it replaces.
+ */
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private static final int WINDOW = 8192;
+    private static final int BATCH = 1024;
+
+    private final Readable input;
+    private char[] buffer = new char[WINDOW];
+    // Characters buffer[0, limit) have been read, the lexeme being scanned is buffer[start, current).
+    private int limit;
     private int start;
     private int current;
+    private boolean exhausted;
     private int line = 1;
-    private static final Map<String, TokenType> keywords;
+    private final TokenBuffer tokens = new TokenBuffer(BATCH);
+    private final Symbols symbols = new Symbols();
+    private boolean finished;
+    // Punctuation and keywords share their lexeme instead of copying it out of the window.
+    private static final Map<TokenType, String> lexemes;
+
+    static {
+        lexemes = new EnumMap<>(TokenType.class);
+        lexemes.put(LEFT_PAREN, "(");
+        lexemes.put(RIGHT_PAREN, ")");
+        lexemes.put(LEFT_BRACE, "{");
+        lexemes.put(RIGHT_BRACE, "}");
+        lexemes.put(COMMA, ",");
+        lexemes.put(DOT, ".");
+        lexemes.put(SEMICOLON, ";");
+        lexemes.put(MINUS, "-");
+        lexemes.put(PLUS, "+");
+        lexemes.put(SLASH, "/");
+        lexemes.put(STAR, "*");
+        lexemes.put(BANG, "!");
+        lexemes.put(BANG_EQUAL, "!=");
+        lexemes.put(LESS, "<");
+        lexemes.put(LESS_EQUAL, "<=");
+        lexemes.put(GREATER, ">");
+        lexemes.put(GREATER_EQUAL, ">=");
+        lexemes.put(EQUAL, "=");
+        lexemes.put(EQUAL_EQUAL, "==");
+        lexemes.put(AND, "and");
+        lexemes.put(CLASS, "class");
+        lexemes.put(ELSE, "else");
+        lexemes.put(FALSE, "false");
+        lexemes.put(TRUE, "true");
+        lexemes.put(IF, "if");
+        lexemes.put(WHILE, "while");
+        lexemes.put(FOR, "for");
+        lexemes.put(NIL, "nil");
+        lexemes.put(OR, "or");
+        lexemes.put(PRINT, "print");
+        lexemes.put(RETURN, "return");
+        lexemes.put(SUPER, "super");
+        lexemes.put(THIS, "this");
+        lexemes.put(VAR, "var");
+        lexemes.put(FUN, "fun");
+        lexemes.put(BREAK, "break");
+        lexemes.put(NEW, "new");
+    }
+
+    private static final byte OTHER = 0, DIGIT = 1, LETTER = 2, SPACE = 3;
+    private static final byte[] classes = new byte[256];
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("true", TRUE);
-        keywords.put("if", IF);
-        keywords.put("while", WHILE);
-        keywords.put("for", FOR);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("var", VAR);
-        keywords.put("fun", FUN);
-        keywords.put("break", BREAK);
-        keywords.put("new", NEW);
+        for (char c = 0; c < classes.length; c++) {
+            if (Character.isDigit(c)) classes[c] = DIGIT;
+            else if (Character.isLetter(c)) classes[c] = LETTER;
+            else if (Character.isWhitespace(c)) classes[c] = SPACE;
+        }
     }
 
     public Scanner(String source) {
-        this.source = source;
+        this(CharBuffer.wrap(source));
+    }
+
+    /**
+     * Scans a {@link java.io.Reader}, a {@link CharBuffer} or any other source of characters.
+     */
+    public Scanner(Readable input) {
+        this.input = input;
+    }
+
+    /**
+     * Scans a UTF-8 file by mapping it into memory instead of reading it through a stream.
+     */
+    public static Scanner map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Scanner(new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        }
     }
 
+    // Copies ASCII bytes straight into the window, and only starts decoding UTF-8 from the first
+    // byte that isn't ASCII. Only used to fill the scanner's window, which is backed by an array.
+    private static class MappedSource implements Readable {
+        private final ByteBuffer bytes;
+        private CharsetDecoder decoder;
+        private byte[] scratch = new byte[0];
 
-    public List<Token> scan() {
-        while (!isAtEnd()) {
-            scanToken();
+        MappedSource(ByteBuffer bytes) {
+            this.bytes = bytes;
         }
 
-        tokens.add(new Token(EOF, "", null, line));
+        @Override
+        public int read(CharBuffer chars) {
+            if (!bytes.hasRemaining()) return -1;
+            int written = chars.position();
+            if (decoder == null) {
+                int count = Math.min(bytes.remaining(), chars.remaining());
+                if (scratch.length < count) scratch = new byte[count];
+                int from = bytes.position();
+                bytes.get(from, scratch, 0, count);
+                char[] array = chars.array();
+                int to = chars.arrayOffset() + chars.position();
+                int i = 0;
+                for (byte b; i < count && (b = scratch[i]) >= 0; i++) array[to + i] = (char) b;
+                bytes.position(from + i);
+                chars.position(chars.position() + i);
+                if (i < count) {
+                    decoder = StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                }
+            }
+            if (decoder != null) decoder.decode(bytes, chars, true);
+            return chars.position() - written;
+        }
+    }
+
+    /**
+     * Scans the whole source.
+     */
+    public TokenBuffer scan() {
+        while (!finished) scanToken();
+        return tokens;
+    }
+
+    /**
+     * Drops the first tokens of the buffer and scans up to a batch more, for a parser that reads
+     * the source as it goes.
+     */
+    TokenBuffer refill(int discard) {
+        tokens.discard(discard);
+        int end = tokens.size() + BATCH;
+        while (!finished && tokens.size() < end) scanToken();
         return tokens;
     }
 
     private void scanToken() {
         skipWhitespace();
-        if (isAtEnd()) return;
+        start = current;
+        if (isAtEnd()) {
+            tokens.add(EOF, "", null, line);
+            finished = true;
+            return;
+        }
 
         char c = advance();
 
@@ -69,10 +192,7 @@ public class Scanner {
             case ';' -> addToken(SEMICOLON);
             case '-' -> addToken(MINUS);
             case '+' -> addToken(PLUS);
-            case '/' -> {
-                if (match('/')) while (peek() != '\n' && !isAtEnd()) advance();
-                else addToken(SLASH);
-            }
+            case '/' -> addToken(SLASH);
             case '*' -> addToken(STAR);
             case '!' -> addToken(match('=') ? BANG_EQUAL : BANG);
             case '<' -> addToken(match('=') ? LESS_EQUAL : LESS);
@@ -80,35 +200,73 @@ public class Scanner {
             case '=' -> addToken(match('=') ? EQUAL_EQUAL : EQUAL);
             case '"' -> string();
             default -> {
-                if (Character.isDigit(c)) number();
-                else if (Character.isLetter(c)) identifier();
+                if (isDigit(c)) number();
+                else if (isLetter(c)) identifier();
                 else Lox.error(line, "Unexpected character.");
             }
         }
-        start = current;
     }
 
     private void identifier() {
-        while (Character.isLetterOrDigit(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        while (isLetter(peek()) || isDigit(peek())) advance();
+        TokenType type = keyword(buffer, start, current - start);
+        if (type == IDENTIFIER) tokens.add(type, symbols.intern(buffer, start, current - start), null, line);
+        else addToken(type);
+    }
+
+    /**
+     * The keyword spelled by the given characters, or IDENTIFIER. Switches on the first character,
+     * and the second where two keywords share it, then compares the rest in place, so no String is
+     * needed to tell keywords apart.
+     */
+    public static TokenType keyword(char[] chars, int start, int length) {
+        if (length < 2 || length > 6) return IDENTIFIER;
+        return switch (chars[start]) {
+            case 'a' -> rest(chars, start, length, "and", AND);
+            case 'b' -> rest(chars, start, length, "break", BREAK);
+            case 'c' -> rest(chars, start, length, "class", CLASS);
+            case 'e' -> rest(chars, start, length, "else", ELSE);
+            case 'f' -> switch (chars[start + 1]) {
+                case 'u' -> rest(chars, start, length, "fun", FUN);
+                case 'o' -> rest(chars, start, length, "for", FOR);
+                default -> rest(chars, start, length, "false", FALSE);
+            };
+            case 'i' -> rest(chars, start, length, "if", IF);
+            case 'n' -> chars[start + 1] == 'i' ? rest(chars, start, length, "nil", NIL)
+                    : rest(chars, start, length, "new", NEW);
+            case 'o' -> rest(chars, start, length, "or", OR);
+            case 'p' -> rest(chars, start, length, "print", PRINT);
+            case 'r' -> rest(chars, start, length, "return", RETURN);
+            case 's' -> rest(chars, start, length, "super", SUPER);
+            case 't' -> chars[start + 1] == 'h' ? rest(chars, start, length, "this", THIS)
+                    : rest(chars, start, length, "true", TRUE);
+            case 'v' -> rest(chars, start, length, "var", VAR);
+            case 'w' -> rest(chars, start, length, "while", WHILE);
+            default -> IDENTIFIER;
+        };
+    }
+
+    private static TokenType rest(char[] chars, int start, int length, String keyword, TokenType type) {
+        if (length != keyword.length()) return IDENTIFIER;
+        for (int i = 1; i < length; i++) {
+            if (chars[start + i] != keyword.charAt(i)) return IDENTIFIER;
+        }
+        return type;
     }
 
     private void number() {
-        while (Character.isDigit(peek())) advance();
-        if (peek() == '.' && Character.isDigit(peekNext())) {
+        while (isDigit(peek())) advance();
+        if (peek() == '.' && isDigit(peekNext())) {
             advance();
-            while (Character.isDigit(peek())) advance();
+            while (isDigit(peek())) advance();
         }
-        Double value = Double.parseDouble(source.substring(start, current));
-        addToken(NUMBER, value);
+        String text = lexeme();
+        tokens.add(NUMBER, text, Double.parseDouble(text), line);
     }
 
     private char peekNext() {
-        if (current + 1 > source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (!available(1)) return '\0';
+        return buffer[current + 1];
     }
 
     private void string() {
@@ -121,8 +279,8 @@ public class Scanner {
             return;
         }
         advance();
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        String value = symbols.intern(buffer, start + 1, current - start - 2);
+        tokens.add(STRING, lexeme(), value, line);
     }
 
     private boolean match(char c) {
@@ -135,31 +293,80 @@ public class Scanner {
 
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return buffer[current];
     }
 
     private void addToken(TokenType tokenType) {
-        addToken(tokenType, null);
+        tokens.add(tokenType, lexemes.get(tokenType), null, line);
+    }
+
+    private static boolean isDigit(char c) {
+        return c < 256 ? classes[c] == DIGIT : Character.isDigit(c);
     }
 
-    private void addToken(TokenType tokenType, Object o) {
-        String lexeme = source.substring(start, current);
-        tokens.add(new Token(tokenType, lexeme, o, line));
+    private static boolean isLetter(char c) {
+        return c < 256 ? classes[c] == LETTER : Character.isLetter(c);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c < 256 ? classes[c] == SPACE : Character.isWhitespace(c);
+    }
+
+    private String lexeme() {
+        return new String(buffer, start, current - start);
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !available(0);
     }
 
+    // Skips comments too, so the window doesn't have to hold a whole comment line.
     private void skipWhitespace() {
-        while (!isAtEnd() && Character.isWhitespace(source.charAt(start))) {
-            if (source.charAt(start) == '\n') line++;
-            start++;
-            current = start;
+        for (; ; ) {
+            char c = peek();
+            if (c == '/' && peekNext() == '/') {
+                while (peek() != '\n' && !isAtEnd()) {
+                    advance();
+                    start = current;
+                }
+            } else if (!isAtEnd() && isWhitespace(c)) {
+                if (c == '\n') line++;
+                advance();
+            } else {
+                return;
+            }
+            start = current;
         }
     }
 
     private char advance() {
-        return source.charAt(current++);
+        return buffer[current++];
+    }
+
+    // Whether the character the given distance past current is in the window, reading more of the
+    // input into it if needed. Everything before start has been scanned and can be dropped.
+    private boolean available(int ahead) {
+        while (current + ahead >= limit) {
+            if (exhausted) return false;
+            // A decoder may need room for both halves of a surrogate pair.
+            if (buffer.length - limit < 2) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit -= start;
+                    current -= start;
+                    start = 0;
+                } else {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            try {
+                int read = input.read(CharBuffer.wrap(buffer, limit, buffer.length - limit));
+                if (read < 0) exhausted = true;
+                else limit += read;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return true;
     }
 }
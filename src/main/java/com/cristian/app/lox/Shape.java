@@ -0,0 +1,43 @@
+package com.cristian.app.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of the fields of a {@link LoxInstance}: which offset of its field array holds each name.
+ * Instances start out with the empty shape of their class and move to a child shape whenever a
+ * field is added, so instances of a class that get the same fields in the same order share one
+ * shape. As shapes are never shared between classes, a shape also identifies the methods.
+ */
+final class Shape {
+    private final Map<String, Integer> offsets;
+    private final Map<String, Shape> transitions = new HashMap<>();
+
+    Shape() {
+        this(new HashMap<>());
+    }
+
+    private Shape(Map<String, Integer> offsets) {
+        this.offsets = offsets;
+    }
+
+    int offset(String identifier) {
+        Integer offset = offsets.get(identifier);
+        return offset == null ? -1 : offset;
+    }
+
+    int size() {
+        return offsets.size();
+    }
+
+    Shape with(String identifier) {
+        Shape shape = transitions.get(identifier);
+        if (shape == null) {
+            Map<String, Integer> childOffsets = new HashMap<>(offsets);
+            childOffsets.put(identifier, offsets.size());
+            shape = new Shape(childOffsets);
+            transitions.put(identifier, shape);
+        }
+        return shape;
+    }
+}
@@ -0,0 +1,13 @@
+package com.cristian.app.lox;
+
+/**
+ * Raised at the call that recursed deeper than the stack allows. Unlike other runtime errors, a
+ * constructor call never drops it.
+ */
+class StackOverflow extends RuntimeError {
+    private static final long serialVersionUID = 1L;
+
+    StackOverflow(Token token) {
+        super(token, "Stack overflow.");
+    }
+}
@@ -33,6 +33,7 @@ public abstract class Stmt {
         }
 
         final  List<Stmt> statements;
+        int locals;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -134,6 +135,8 @@ public abstract class Stmt {
 
         final  Token identifier;
         final  Expr initializer;
+        boolean reassigned;
+        int slot = -1;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -151,6 +154,11 @@ public abstract class Stmt {
         final  Token identifier;
         final  List<Token> params;
         final  List<Stmt> body;
+        int slot = -1;
+        int locals;
+        int hotness;
+        JitCode jitCode;
+        boolean jitFailed;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -166,6 +174,7 @@ public abstract class Stmt {
 
         final  Token identifier;
         final  List<Stmt.Function> methods;
+        int slot = -1;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -0,0 +1,47 @@
+package com.cristian.app.lox;
+
+/**
+ * Table of every identifier and string literal one scanner reads, so each name or text is a single
+ * String instance whose hash code is computed once. Names are looked up straight from the scanner's
+ * characters, so only the first occurrence of a name allocates. The table lives as long as its
+ * scanner, so nothing is kept once a program has been compiled.
+ */
+final class Symbols {
+    private String[] table = new String[256];
+    private int size = 0;
+
+    String intern(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) hash = 31 * hash + chars[i];
+        int mask = table.length - 1;
+        int index = hash & mask;
+        for (String symbol; (symbol = table[index]) != null; index = (index + 1) & mask) {
+            if (matches(symbol, chars, start, length)) return symbol;
+        }
+        String symbol = new String(chars, start, length);
+        table[index] = symbol;
+        if (++size * 2 > table.length) grow();
+        return symbol;
+    }
+
+    private static boolean matches(String symbol, char[] chars, int start, int length) {
+        if (symbol.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    // Same hash as intern computes, which is String.hashCode.
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String symbol : old) {
+            if (symbol == null) continue;
+            int index = symbol.hashCode() & mask;
+            while (table[index] != null) index = (index + 1) & mask;
+            table[index] = symbol;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.cristian.app.lox;
+
+import java.util.Arrays;
+
+/**
+ * Tokens stored as parallel arrays rather than one object each. The parser reads types and lines
+ * from it directly and only asks for a {@link Token} where the tree keeps one. Lexemes are shared:
+ * identifiers are interned and punctuation uses constants.
+ */
+public final class TokenBuffer {
+    private TokenType[] types;
+    private String[] lexemes;
+    private Object[] literals;
+    private int[] lines;
+    private int size = 0;
+
+    TokenBuffer(int capacity) {
+        types = new TokenType[capacity];
+        lexemes = new String[capacity];
+        literals = new Object[capacity];
+        lines = new int[capacity];
+    }
+
+    void add(TokenType type, String lexeme, Object literal, int line) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            lexemes = Arrays.copyOf(lexemes, size * 2);
+            literals = Arrays.copyOf(literals, size * 2);
+            lines = Arrays.copyOf(lines, size * 2);
+        }
+        types[size] = type;
+        lexemes[size] = lexeme;
+        literals[size] = literal;
+        lines[size] = line;
+        size++;
+    }
+
+    /**
+     * Drops the first count tokens, moving the rest to the front.
+     */
+    void discard(int count) {
+        int rest = size - count;
+        System.arraycopy(types, count, types, 0, rest);
+        System.arraycopy(lexemes, count, lexemes, 0, rest);
+        System.arraycopy(literals, count, literals, 0, rest);
+        System.arraycopy(lines, count, lines, 0, rest);
+        Arrays.fill(lexemes, rest, size, null);
+        Arrays.fill(literals, rest, size, null);
+        size = rest;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return types[index];
+    }
+
+    public Object literal(int index) {
+        return literals[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public Token token(int index) {
+        return new Token(types[index], lexemes[index], literals[index], lines[index]);
+    }
+}
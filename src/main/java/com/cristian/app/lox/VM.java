@@ -0,0 +1,489 @@
+package com.cristian.app.lox;
+
+import com.cristian.app.Lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stack machine that runs code produced by the {@link Compiler}. It follows the semantics of the
+ * tree-walking {@link Interpreter}, which stays the reference engine.
+ */
+public class VM {
+    // Call frames allowed per byte of the --stack-size option, about what a call takes on the tree
+    // interpreter's stack, so that each engine can recurse roughly as deep.
+    private static final int FRAME_BYTES = 256;
+
+    private static class CallFrame {
+        VmClosure closure;
+        int ip;
+        int base;
+        boolean constructing;
+    }
+
+    // A new expression that hasn't finished yet: the frame it runs in, the stack slot holding its
+    // class and then its instance, and where that frame goes on if an error is raised meanwhile.
+    private static class Construction {
+        int frameCount;
+        int slot;
+        int resume;
+    }
+
+    private Object[] stack = new Object[1024];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private Construction[] constructions = new Construction[16];
+    private int constructionCount = 0;
+    private int framesMax = (512 << 20) / FRAME_BYTES;
+    private VmUpvalue openUpvalues = null;
+    private final Map<String, Object> globals = new HashMap<>();
+
+    public VM() {
+        Natives.standard.forEach(function -> globals.put(function.name, function));
+    }
+
+    public void setStackSize(long stackSize) {
+        framesMax = (int) Math.max(1, Math.min(Integer.MAX_VALUE, stackSize / FRAME_BYTES));
+    }
+
+    public void interpret(VmFunction script) {
+        try {
+            VmClosure closure = new VmClosure(script);
+            push(closure);
+            call(closure, 0, null);
+            run();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            Output.current().flush();
+            Arrays.fill(stack, 0, sp, null);
+            sp = 0;
+            frameCount = 0;
+            constructionCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private Object peek(int distance) {
+        return stack[sp - 1 - distance];
+    }
+
+    // Runtime errors raised while creating an instance are dropped like the tree walker does, so
+    // the VM unwinds to the innermost unfinished new expression and goes on from there. Stack
+    // overflows are always reported.
+    private void run() {
+        for (; ; ) {
+            try {
+                execute();
+                return;
+            } catch (StackOverflow error) {
+                throw error;
+            } catch (RuntimeError error) {
+                if (constructionCount == 0) throw error;
+                recover();
+            }
+        }
+    }
+
+    private void recover() {
+        Construction construction = constructions[--constructionCount];
+        int slot = construction.slot;
+        closeUpvalues(slot);
+        frameCount = construction.frameCount;
+        if (stack[slot] instanceof VmClass klass) {
+            stack[slot] = new VmInstance(klass);
+            if (Metrics.enabled) Metrics.instances.increment();
+        }
+        Arrays.fill(stack, slot + 1, sp, null);
+        sp = slot + 1;
+        frames[frameCount - 1].ip = construction.resume;
+    }
+
+    private void execute() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+
+        for (; ; ) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.CONSTANT -> {
+                    push(constants[readShort(code, ip)]);
+                    ip += 2;
+                }
+                case OpCode.NIL -> push(null);
+                case OpCode.TRUE -> push(true);
+                case OpCode.FALSE -> push(false);
+                case OpCode.POP -> pop();
+                case OpCode.GET_LOCAL -> push(stack[frame.base + (code[ip++] & 0xff)]);
+                case OpCode.SET_LOCAL -> stack[frame.base + (code[ip++] & 0xff)] = peek(0);
+                case OpCode.GET_GLOBAL -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    if (!globals.containsKey(name)) {
+                        throw new RuntimeError(tokenAt(frame, ip), "Undefined identifier '" + name + "'.");
+                    }
+                    push(globals.get(name));
+                    ip += 2;
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    globals.put((String) constants[readShort(code, ip)], pop());
+                    ip += 2;
+                }
+                case OpCode.SET_GLOBAL -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    if (!globals.containsKey(name)) {
+                        throw new RuntimeError(tokenAt(frame, ip), "Undefined variable '" + name + "'.");
+                    }
+                    globals.put(name, peek(0));
+                    ip += 2;
+                }
+                case OpCode.GET_UPVALUE -> {
+                    VmUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    push(upvalue.open ? stack[upvalue.slot] : upvalue.closed);
+                }
+                case OpCode.SET_UPVALUE -> {
+                    VmUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.open) {
+                        stack[upvalue.slot] = peek(0);
+                    } else {
+                        upvalue.closed = peek(0);
+                    }
+                }
+                case OpCode.GET_PROPERTY -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    Token token = tokenAt(frame, ip);
+                    ip += 2;
+                    if (!(peek(0) instanceof VmInstance instance)) {
+                        throw new RuntimeError(token, "Only instances have properties.");
+                    }
+                    if (Metrics.enabled) Metrics.propertyLookups.increment();
+                    if (instance.fields.containsKey(name)) {
+                        pop();
+                        push(instance.fields.get(name));
+                    } else {
+                        VmClosure method = instance.klass.methods.get(name);
+                        if (method == null) {
+                            throw new RuntimeError(token, "Undefined property '" + name + "'.");
+                        }
+                        pop();
+                        push(new VmBoundMethod(instance, method));
+                    }
+                }
+                case OpCode.SET_PROPERTY -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    if (!(peek(1) instanceof VmInstance instance)) {
+                        throw new RuntimeError(tokenAt(frame, ip), "Only instances have fields");
+                    }
+                    ip += 2;
+                    if (Metrics.enabled) Metrics.propertyLookups.increment();
+                    Object value = pop();
+                    instance.fields.put(name, value);
+                    pop();
+                    push(value);
+                }
+                case OpCode.EQUAL -> {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Interpreter.isEqual(left, right));
+                }
+                case OpCode.GREATER -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    push((Double) pop() > right);
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    push((Double) pop() >= right);
+                }
+                case OpCode.LESS -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    push((Double) pop() < right);
+                }
+                case OpCode.LESS_EQUAL -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    push((Double) pop() <= right);
+                }
+                case OpCode.ADD -> {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Double l && right instanceof Double r) {
+                        push(l + r);
+                    } else if (left instanceof CharSequence l && right instanceof CharSequence r) {
+                        push(LoxString.concat(l, r));
+                    } else {
+                        throw new RuntimeError(tokenAt(frame, ip), "Operands must be String or Numbers");
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    push((Double) pop() - right);
+                }
+                case OpCode.MULTIPLY -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    push((Double) pop() * right);
+                }
+                case OpCode.DIVIDE -> {
+                    checkNumberOperands(frame, ip);
+                    double right = (Double) pop();
+                    if (right == 0) throw new RuntimeError(tokenAt(frame, ip), "Can't divide by zero.");
+                    push((Double) pop() / right);
+                }
+                case OpCode.NOT -> push(!Interpreter.isTruthy(pop()));
+                case OpCode.NEGATE -> {
+                    if (!(peek(0) instanceof Double)) {
+                        throw new RuntimeError(tokenAt(frame, ip), "Operand must be a number");
+                    }
+                    push(-(Double) pop());
+                }
+                case OpCode.PRINT -> Output.print(pop());
+                case OpCode.JUMP -> ip += readShort(code, ip) + 2;
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (Interpreter.isTruthy(peek(0))) {
+                        ip += 2;
+                    } else {
+                        ip += readShort(code, ip) + 2;
+                    }
+                }
+                case OpCode.LOOP -> ip -= readShort(code, ip) - 2;
+                case OpCode.CALL -> {
+                    int argCount = code[ip] & 0xff;
+                    frame.ip = ++ip;
+                    callValue(peek(argCount), argCount, tokenAt(frame, ip));
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                }
+                case OpCode.INVOKE -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    Token token = tokenAt(frame, ip);
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    invoke(name, argCount, token, tokenAt(frame, ip));
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                }
+                case OpCode.BEGIN_NEW -> {
+                    if (!(peek(0) instanceof VmClass klass)) {
+                        throw new RuntimeError(tokenAt(frame, ip), "Can only instantiate classes.");
+                    }
+                    int resume = ip + readShort(code, ip) + 2;
+                    if (klass.methods.get((String) constants[readShort(code, ip + 2)]) == null) {
+                        stack[sp - 1] = new VmInstance(klass);
+                        if (Metrics.enabled) Metrics.instances.increment();
+                        ip = resume;
+                    } else {
+                        beginConstruction(resume);
+                        ip += 4;
+                    }
+                }
+                case OpCode.NEW -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    instantiate(name, argCount, tokenAt(frame, ip));
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                }
+                case OpCode.CLOSURE -> {
+                    VmFunction function = (VmFunction) constants[readShort(code, ip)];
+                    ip += 2;
+                    VmClosure closure = new VmClosure(function);
+                    for (int i = 0; i < closure.upvalues.length; i++) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        closure.upvalues[i] = isLocal
+                                ? captureUpvalue(frame.base + index)
+                                : frame.closure.upvalues[index];
+                    }
+                    push(closure);
+                }
+                case OpCode.CLOSE_UPVALUE -> {
+                    closeUpvalues(sp - 1);
+                    pop();
+                }
+                case OpCode.RETURN -> {
+                    Object result = pop();
+                    closeUpvalues(frame.base);
+                    frameCount--;
+                    if (frame.constructing) {
+                        result = stack[frame.base];
+                        constructionCount--;
+                    }
+                    Arrays.fill(stack, frame.base, sp, null);
+                    sp = frame.base;
+                    if (frameCount == 0) return;
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                }
+                case OpCode.CLASS -> {
+                    push(new VmClass((String) constants[readShort(code, ip)]));
+                    ip += 2;
+                }
+                case OpCode.METHOD -> {
+                    VmClosure method = (VmClosure) pop();
+                    ((VmClass) peek(0)).methods.put((String) constants[readShort(code, ip)], method);
+                    ip += 2;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + instruction);
+            }
+        }
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private static Token tokenAt(CallFrame frame, int ip) {
+        return frame.closure.function.chunk.tokens[ip - 1];
+    }
+
+    private void checkNumberOperands(CallFrame frame, int ip) {
+        if (peek(0) instanceof Double && peek(1) instanceof Double) return;
+        throw new RuntimeError(tokenAt(frame, ip), "Operands must be both Numbers");
+    }
+
+    private void callValue(Object callee, int argCount, Token token) {
+        if (callee instanceof VmClosure closure) {
+            call(closure, argCount, token);
+        } else if (callee instanceof VmBoundMethod bound) {
+            stack[sp - argCount - 1] = bound.receiver;
+            call(bound.method, argCount, token);
+        } else if (callee instanceof NativeFunction function) {
+            if (argCount != function.arity()) {
+                throw new RuntimeError(token, "Expected " + function.arity() + " arguments but got "
+                        + argCount + ".");
+            }
+            Object result = function.call(Arrays.asList(Arrays.copyOfRange(stack, sp - argCount, sp)), token);
+            Arrays.fill(stack, sp - argCount - 1, sp, null);
+            sp -= argCount + 1;
+            push(result);
+        } else {
+            throw new RuntimeError(token, "Can only call functions and classes.");
+        }
+    }
+
+    private void invoke(String name, int argCount, Token identifier, Token paren) {
+        if (!(peek(argCount) instanceof VmInstance instance)) {
+            throw new RuntimeError(identifier, "Only instances have properties.");
+        }
+        if (Metrics.enabled) Metrics.propertyLookups.increment();
+        if (instance.fields.containsKey(name)) {
+            Object field = instance.fields.get(name);
+            stack[sp - argCount - 1] = field;
+            callValue(field, argCount, paren);
+            return;
+        }
+        VmClosure method = instance.klass.methods.get(name);
+        if (method == null) {
+            throw new RuntimeError(identifier, "Undefined property '" + name + "'.");
+        }
+        call(method, argCount, paren);
+    }
+
+    // BEGIN_NEW has checked the class and that it has a constructor.
+    private void instantiate(String name, int argCount, Token identifier) {
+        VmClass klass = (VmClass) peek(argCount);
+        stack[sp - argCount - 1] = new VmInstance(klass);
+        if (Metrics.enabled) Metrics.instances.increment();
+        VmClosure constructor = klass.methods.get(name);
+        if (constructor.function.arity != argCount) {
+            while (argCount-- > 0) pop();
+            constructionCount--;
+            return;
+        }
+        call(constructor, argCount, identifier);
+        frames[frameCount - 1].constructing = true;
+    }
+
+    private void beginConstruction(int resume) {
+        if (constructionCount == constructions.length) {
+            constructions = Arrays.copyOf(constructions, constructionCount * 2);
+        }
+        Construction construction = constructions[constructionCount];
+        if (construction == null) {
+            construction = new Construction();
+            constructions[constructionCount] = construction;
+        }
+        constructionCount++;
+        construction.frameCount = frameCount;
+        construction.slot = sp - 1;
+        construction.resume = resume;
+    }
+
+    private void call(VmClosure closure, int argCount, Token token) {
+        if (argCount != closure.function.arity) {
+            throw new RuntimeError(token, "Expected " + closure.function.arity + " arguments but got "
+                    + argCount + ".");
+        }
+        if (Metrics.enabled) Metrics.calls.increment();
+        if (frameCount == framesMax) {
+            throw new StackOverflow(token);
+        }
+        if (frameCount == frames.length) frames = Arrays.copyOf(frames, frameCount * 2);
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frameCount++;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+        frame.constructing = false;
+    }
+
+    private VmUpvalue captureUpvalue(int slot) {
+        VmUpvalue previous = null;
+        VmUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+        VmUpvalue created = new VmUpvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            VmUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.open = false;
+            openUpvalues = upvalue.next;
+        }
+    }
+}
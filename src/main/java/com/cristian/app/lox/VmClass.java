@@ -0,0 +1,20 @@
+package com.cristian.app.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class VmClass {
+    final String identifier;
+    final Map<String, VmClosure> methods = new HashMap<>();
+
+    VmClass(String identifier) {
+        this.identifier = identifier;
+    }
+
+    @Override
+    public String toString() {
+        return "LoxClass{" +
+                "identifier='" + identifier + '\'' +
+                '}';
+    }
+}
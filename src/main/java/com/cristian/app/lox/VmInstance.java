@@ -0,0 +1,20 @@
+package com.cristian.app.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class VmInstance {
+    final VmClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    VmInstance(VmClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return "LoxInstance{" +
+                "klass=" + klass +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package com.cristian.app.lox;
+
+public class VmUpvalue {
+    final int slot;
+    boolean open = true;
+    Object closed;
+    VmUpvalue next;
+
+    VmUpvalue(int slot, VmUpvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
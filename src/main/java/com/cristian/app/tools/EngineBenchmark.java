@@ -0,0 +1,86 @@
+package com.cristian.app.tools;
+
+import com.cristian.app.lox.*;
+import com.cristian.app.lox.Compiler;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EngineBenchmark {
+    private static final Map<String, String> WORKLOADS = new LinkedHashMap<>();
+
+    static {
+        WORKLOADS.put("fib", """
+                fun fib(n) {
+                  if (n < 2) return n;
+                  return fib(n - 1) + fib(n - 2);
+                }
+                print fib(25);
+                """);
+        WORKLOADS.put("loop", """
+                var i = 0;
+                var sum = 0;
+                while (i < 1000000) {
+                  sum = sum + i * 2 - 1;
+                  i = i + 1;
+                }
+                print sum;
+                """);
+        WORKLOADS.put("methods", """
+                class Counter {
+                  Counter() { this.n = 0; }
+                  inc() { this.n = this.n + 1; }
+                }
+                var counter = new Counter();
+                var i = 0;
+                while (i < 300000) {
+                  counter.inc();
+                  i = i + 1;
+                }
+                print counter.n;
+                """);
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        PrintStream out = System.out;
+        out.printf("%-10s %12s %12s %12s %12s%n", "workload", "tree (ms)", "closure (ms)", "vm (ms)", "jit (ms)");
+        WORKLOADS.forEach((name, source) -> {
+            List<Stmt> stmts = new Parser(new Scanner(source).scan()).parse();
+            new Resolver().resolve(stmts);
+            double tree = measure(iterations, () -> new Interpreter().interpret(stmts));
+            double closure = measure(iterations, () -> new ClosureCompiler().interpret(stmts));
+            VmFunction script = new Compiler().compile(stmts);
+            double vm = measure(iterations, () -> new VM().interpret(script));
+            double jit = measure(iterations, () -> {
+                Interpreter interpreter = new Interpreter();
+                interpreter.setJitThreshold(1000);
+                interpreter.interpret(stmts);
+            });
+            out.printf("%-10s %12.2f %12.2f %12.2f %12.2f%n", name, tree, closure, vm, jit);
+        });
+    }
+
+    // Median wall time of a run after as many warmup runs, with the program's output discarded.
+    private static double measure(int iterations, Runnable run) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < iterations; i++) run.run();
+            double[] times = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                run.run();
+                times[i] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(times);
+            return times[iterations / 2];
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -14,30 +14,31 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign : Token identifier, Expr value",
+                "Assign : Token identifier, Expr value | int depth = -1, int slot",
                 "Logical : Expr left, Token operator, Expr right",
-                "Binary : Expr left, Token operator, Expr right",
+                "Binary : Expr left, Token operator, Expr right | boolean nonNumeric",
                 "Call : Expr callee, Token paren, List<Expr> arguments",
                 "Grouping : Expr expression",
                 "Literal : Object value",
                 "Unary : Token operator, Expr right",
-                "Variable : Token identifier",
-                "Class : Token identifier, List<Expr> arguments",
-                "Get : Expr object, Token identifier",
-                "Set : Expr object, Token identifier, Expr value",
-                "This : Token keyword"
+                "Variable : Token identifier | int depth = -1, int slot",
+                "Class : Token identifier, List<Expr> arguments | int depth = -1, int slot",
+                "Get : Expr object, Token identifier | PropertyCache cache = new PropertyCache()",
+                "Set : Expr object, Token identifier, Expr value | PropertyCache cache = new PropertyCache()",
+                "This : Token keyword | int depth = -1, int slot"
         ));
         defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block : List<Stmt> statements",
+                "Block : List<Stmt> statements | int locals",
                 "If : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "While : Expr condition, Stmt body",
                 "Break : Token breakToken",
                 "Expression : Expr expression",
                 "Print : Expr expression",
                 "Return : Token name, Expr initializer",
-                "Var : Token identifier, Expr initializer",
-                "Function : Token identifier, List<Token> params, List<Stmt> body",
-                "Class : Token identifier, List<Stmt.Function> methods"
+                "Var : Token identifier, Expr initializer | boolean reassigned, int slot = -1",
+                "Function : Token identifier, List<Token> params, List<Stmt> body | int slot = -1, int locals, "
+                        + "int hotness, JitCode jitCode, boolean jitFailed",
+                "Class : Token identifier, List<Stmt.Function> methods | int slot = -1"
         ));
     }
 
@@ -57,9 +58,16 @@ public class GenerateAst {
             int colonIdx = type.indexOf(":");
             String typeName = type;
             String[] constructorParams = new String[0];
+            String[] mutableFields = new String[0];
             if (colonIdx != -1) {
                 typeName = type.substring(0, colonIdx - 1).trim();
-                constructorParams = type.substring(colonIdx + 1, type.length()).split(",");
+                String fields = type.substring(colonIdx + 1);
+                int barIdx = fields.indexOf("|");
+                if (barIdx != -1) {
+                    mutableFields = fields.substring(barIdx + 1).split(",");
+                    fields = fields.substring(0, barIdx - 1);
+                }
+                constructorParams = fields.split(",");
             }
             writer.println("    public static class " + typeName + " extends " + baseName + " {");
             writer.println("        " + typeName + "(" + String.join(", ", constructorParams) + ") {");
@@ -72,6 +80,9 @@ public class GenerateAst {
             for (String constructorParam : constructorParams) {
                 writer.println("        final " + constructorParam + ";");
             }
+            for (String mutableField : mutableFields) {
+                writer.println("        " + mutableField.trim() + ";");
+            }
             writer.println();
             writer.println("        @Override");
             writer.println("        <R> R accept(Visitor<R> visitor) {");
@@ -0,0 +1,244 @@
+package com.cristian.app;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.cristian.app.lox.AstCache;
+import com.cristian.app.lox.Scanner;
+import com.cristian.app.lox.Stmt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Runs every program in lox-source-tests through each engine and checks it prints what the .out file next to it
+ * holds.
+ */
+public class EngineTest
+    extends TestCase
+{
+    public EngineTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( EngineTest.class );
+    }
+
+    public void testEnginesPrintExpectedOutput() throws IOException
+    {
+        File[] sources = new File( "lox-source-tests" ).listFiles( ( dir, name ) -> name.endsWith( ".lox" ) );
+        assertNotNull( sources );
+        assertTrue( sources.length > 0 );
+        for ( File source : sources )
+        {
+            String code = Files.readString( source.toPath() );
+            String expected = expected( source );
+            for ( Lox.Engine engine : Lox.Engine.values() )
+            {
+                assertEquals( source.getName() + " on " + engine, expected, run( code, engine, source.getName() ) );
+            }
+        }
+    }
+
+    public void testJitAgreesWhenCompilingEveryFunction() throws IOException
+    {
+        int threshold = Lox.jitThreshold;
+        Lox.jitThreshold = 0;
+        try
+        {
+            File[] sources = new File( "lox-source-tests" ).listFiles( ( dir, name ) -> name.endsWith( ".lox" ) );
+            assertNotNull( sources );
+            for ( File source : sources )
+            {
+                String code = Files.readString( source.toPath() );
+                assertEquals( source.getName(), expected( source ), run( code, Lox.Engine.JIT, source.getName() ) );
+            }
+        }
+        finally
+        {
+            Lox.jitThreshold = threshold;
+        }
+    }
+
+    public void testOptimizerKeepsOutput() throws IOException
+    {
+        File[] sources = new File( "lox-source-tests" ).listFiles( ( dir, name ) -> name.endsWith( ".lox" ) );
+        assertNotNull( sources );
+        for ( File source : sources )
+        {
+            String code = Files.readString( source.toPath() );
+            Lox.optimize = false;
+            try
+            {
+                assertEquals( source.getName(), expected( source ), run( code, Lox.Engine.TREE, source.getName() ) );
+            }
+            finally
+            {
+                Lox.optimize = true;
+            }
+        }
+    }
+
+    public void testAstCacheKeepsOutput() throws IOException
+    {
+        AstCache cache = new AstCache( Files.createTempDirectory( "lox-ast-cache" ) );
+        File[] sources = new File( "lox-source-tests" ).listFiles( ( dir, name ) -> name.endsWith( ".lox" ) );
+        assertNotNull( sources );
+        for ( File source : sources )
+        {
+            String code = Files.readString( source.toPath() );
+            String key = AstCache.key( source.toPath() );
+            cache.store( key, Lox.parse( new Scanner( code ) ) );
+            List<Stmt> loaded = cache.load( key );
+            assertNotNull( source.getName(), loaded );
+            assertEquals( source.getName(), expected( source ),
+                    capture( source.getName(), () -> Lox.run( loaded, Lox.Engine.TREE ) ) );
+        }
+    }
+
+    public void testDeclarationsInBranchesKeepLaterLocals()
+    {
+        String branch = "fun g(c) { if (c) fun h() { return h; } var b = \"b\"; print b; }\n"
+                + "g(false);\ng(true);\n";
+        String loop = "fun w() { var k = 0; while ((k = k + 1) < 4) fun h() { return h; } var m = \"m\"; print m; }\n"
+                + "w();\n";
+        for ( boolean optimize : new boolean[] { true, false } )
+        {
+            Lox.optimize = optimize;
+            try
+            {
+                for ( Lox.Engine engine : Lox.Engine.values() )
+                {
+                    assertEquals( "b\nb\n", run( branch, engine, "branch" ) );
+                    assertEquals( "m\n", run( loop, engine, "loop" ) );
+                }
+            }
+            finally
+            {
+                Lox.optimize = true;
+            }
+        }
+    }
+
+    public void testTailCallsRunInConstantStack() throws InterruptedException
+    {
+        String code = "fun count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }\n"
+                + "print count(100000, 0);\n";
+        String[] output = new String[2];
+        Thread thread = new Thread( null, () -> {
+            output[0] = run( code, Lox.Engine.TREE, "tail calls" );
+            output[1] = run( code, Lox.Engine.JIT, "tail calls" );
+        }, "tail-calls", 1 << 20 );
+        thread.start();
+        thread.join();
+        assertEquals( "100000\n", output[0] );
+        assertEquals( "100000\n", output[1] );
+    }
+
+    public void testStackOverflowInConstructorIsReported() throws InterruptedException
+    {
+        String code = "class N { N(n) { if (n > 0) new N(n - 1); this.v = n; } }\n"
+                + "new N(1000000);\nprint \"survived\";\n";
+        String[][] outputs = new String[Lox.Engine.values().length][];
+        long stackSize = Lox.stackSize;
+        // The VM keeps its frames off the thread's stack, and takes its limit from the option instead.
+        Lox.stackSize = 1 << 20;
+        Thread thread = new Thread( null, () -> {
+            for ( Lox.Engine engine : Lox.Engine.values() )
+            {
+                outputs[engine.ordinal()] = output( () -> Lox.run( code, engine ) );
+            }
+        }, "stack-overflow", Lox.stackSize );
+        thread.start();
+        try
+        {
+            thread.join();
+        }
+        finally
+        {
+            Lox.stackSize = stackSize;
+        }
+        for ( Lox.Engine engine : Lox.Engine.values() )
+        {
+            String[] output = outputs[engine.ordinal()];
+            assertEquals( engine.toString(), "", output[0] );
+            assertTrue( engine + ": " + output[1], output[1].startsWith( "Stack overflow." ) );
+        }
+    }
+
+    public void testCallingAValueThatIsNotCallableIsReported()
+    {
+        String code = "fun side() { print \"arg\"; return 1; }\n"
+                + "class A { A() { this.n = 3; } }\n"
+                + "fun f(o) { o.n(side()); }\n"
+                + "fun g() { return \"x\"(side()); }\n";
+        int threshold = Lox.jitThreshold;
+        Lox.jitThreshold = 0;
+        try
+        {
+            for ( Lox.Engine engine : Lox.Engine.values() )
+            {
+                for ( String call : new String[] { "f(new A());", "g();" } )
+                {
+                    String[] output = output( () -> Lox.run( code + call, engine ) );
+                    assertEquals( engine + ": " + call, "arg\n", output[0] );
+                    assertTrue( engine + ": " + output[1],
+                            output[1].startsWith( "Can only call functions and classes." ) );
+                }
+            }
+        }
+        finally
+        {
+            Lox.jitThreshold = threshold;
+        }
+    }
+
+    // The output recorded for a source test, in the .out file with the same name.
+    private static String expected( File source ) throws IOException
+    {
+        File golden = new File( source.getParentFile(), source.getName().replaceFirst( "\\.lox$", ".out" ) );
+        assertTrue( golden + " is missing", golden.isFile() );
+        return Files.readString( golden.toPath() );
+    }
+
+    private static String run( String code, Lox.Engine engine, String name )
+    {
+        return capture( name + " on " + engine, () -> Lox.run( code, engine ) );
+    }
+
+    private static String capture( String name, Runnable program )
+    {
+        String[] output = output( program );
+        assertEquals( name, "", output[1] );
+        return output[0];
+    }
+
+    // What the program prints to stdout and to stderr.
+    private static String[] output( Runnable program )
+    {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        try
+        {
+            System.setOut( new PrintStream( stdout ) );
+            System.setErr( new PrintStream( stderr ) );
+            program.run();
+        }
+        finally
+        {
+            System.setOut( out );
+            System.setErr( err );
+        }
+        return new String[] { stdout.toString(), stderr.toString() };
+    }
+}
@@ -0,0 +1,217 @@
+package com.cristian.app.lox;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the tokens the scanner produces from a String, through a Reader, from a memory mapped file and
+ * a batch at a time, around the edges of its window.
+ */
+public class ScannerTest
+    extends TestCase
+{
+    private static final int WINDOW = 8192;
+
+    public ScannerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ScannerTest.class );
+    }
+
+    public void testEverySourceScansTheSameTokens() throws IOException
+    {
+        String source = "class A { A(x) { this.x = x; } }\n"
+                + "// comment\n"
+                + "if (1.5 >= 2 and !false or nil != true) print \"two\nlines\"; else { var b = new A(3); }\n"
+                + "while (a <= b) fun f() { return -a * b / c + d; } break;\n";
+        List<String> expected = List.of(
+                "CLASS class null 1", "IDENTIFIER A null 1", "LEFT_BRACE { null 1", "IDENTIFIER A null 1",
+                "LEFT_PAREN ( null 1", "IDENTIFIER x null 1", "RIGHT_PAREN ) null 1", "LEFT_BRACE { null 1",
+                "THIS this null 1", "DOT . null 1", "IDENTIFIER x null 1", "EQUAL = null 1", "IDENTIFIER x null 1",
+                "SEMICOLON ; null 1", "RIGHT_BRACE } null 1", "RIGHT_BRACE } null 1",
+                "IF if null 3", "LEFT_PAREN ( null 3", "NUMBER 1.5 1.5 3", "GREATER_EQUAL >= null 3",
+                "NUMBER 2 2.0 3", "AND and null 3", "BANG ! null 3", "FALSE false null 3", "OR or null 3",
+                "NIL nil null 3", "BANG_EQUAL != null 3", "TRUE true null 3", "RIGHT_PAREN ) null 3",
+                "PRINT print null 3", "STRING \"two\nlines\" two\nlines 4", "SEMICOLON ; null 4",
+                "ELSE else null 4", "LEFT_BRACE { null 4", "VAR var null 4", "IDENTIFIER b null 4",
+                "EQUAL = null 4", "NEW new null 4", "IDENTIFIER A null 4", "LEFT_PAREN ( null 4",
+                "NUMBER 3 3.0 4", "RIGHT_PAREN ) null 4", "SEMICOLON ; null 4", "RIGHT_BRACE } null 4",
+                "WHILE while null 5", "LEFT_PAREN ( null 5", "IDENTIFIER a null 5", "LESS_EQUAL <= null 5",
+                "IDENTIFIER b null 5", "RIGHT_PAREN ) null 5", "FUN fun null 5", "IDENTIFIER f null 5",
+                "LEFT_PAREN ( null 5", "RIGHT_PAREN ) null 5", "LEFT_BRACE { null 5", "RETURN return null 5",
+                "MINUS - null 5", "IDENTIFIER a null 5", "STAR * null 5", "IDENTIFIER b null 5",
+                "SLASH / null 5", "IDENTIFIER c null 5", "PLUS + null 5", "IDENTIFIER d null 5",
+                "SEMICOLON ; null 5", "RIGHT_BRACE } null 5", "BREAK break null 5", "SEMICOLON ; null 5",
+                "EOF  null 6" );
+        assertEquals( expected, tokens( new Scanner( source ).scan() ) );
+        assertEquals( expected, tokens( new Scanner( new StringReader( source ) ).scan() ) );
+        assertEquals( expected, tokens( new Scanner( trickle( source, 3 ) ).scan() ) );
+        assertEquals( expected, mapped( source ) );
+    }
+
+    public void testReaderAndMappedFileScanPastTheWindow() throws IOException
+    {
+        String source = declarations( 2000 );
+        assertTrue( source.length() > 4 * WINDOW );
+        List<String> expected = expectedDeclarations( 2000 );
+        assertEquals( expected, tokens( new Scanner( source ).scan() ) );
+        assertEquals( expected, tokens( new Scanner( new StringReader( source ) ).scan() ) );
+        assertEquals( expected, tokens( new Scanner( trickle( source, 1000 ) ).scan() ) );
+        assertEquals( expected, mapped( source ) );
+    }
+
+    public void testMappedFileSwitchesFromAsciiToUtf8() throws IOException
+    {
+        // The first byte that isn't ASCII comes after a full window of ASCII, and in the middle of a read.
+        String padding = "//" + "x".repeat( WINDOW + 100 ) + "\n";
+        String source = padding + "var café = \"naïve ☃\"; print café;\n";
+        List<String> expected = List.of(
+                "VAR var null 2", "IDENTIFIER café null 2", "EQUAL = null 2",
+                "STRING \"naïve ☃\" naïve ☃ 2", "SEMICOLON ; null 2", "PRINT print null 2",
+                "IDENTIFIER café null 2", "SEMICOLON ; null 2", "EOF  null 3" );
+        assertEquals( expected, mapped( source ) );
+        assertEquals( expected, tokens( new Scanner( source ).scan() ) );
+
+        // Starting with a character that isn't ASCII decodes the whole file.
+        assertEquals( List.of( "STRING \"é\" é 1", "EOF  null 1" ), mapped( "\"é\"" ) );
+    }
+
+    public void testSurrogatePairAcrossTheWindowEdge() throws IOException
+    {
+        String emoji = "😀";
+        // Puts the high surrogate a few characters either side of the last slot of the first window.
+        for ( int offset = -3; offset <= 3; offset++ )
+        {
+            String source = "//" + "x".repeat( WINDOW - 6 + offset ) + "\n\"a" + emoji + "b\";";
+            assertEquals( WINDOW - 1 + offset, source.indexOf( emoji ) );
+            List<String> expected = List.of( "STRING \"a" + emoji + "b\" a" + emoji + "b 2", "SEMICOLON ; null 2",
+                    "EOF  null 2" );
+            String at = "offset " + offset;
+            assertEquals( at, expected, tokens( new Scanner( source ).scan() ) );
+            assertEquals( at, expected, tokens( new Scanner( new StringReader( source ) ).scan() ) );
+            assertEquals( at, expected, mapped( source ) );
+        }
+    }
+
+    public void testTokenLongerThanTheWindow() throws IOException
+    {
+        String text = "y".repeat( 3 * WINDOW );
+        String source = "print \"" + text + "\";";
+        List<String> expected = List.of( "PRINT print null 1", "STRING \"" + text + "\" " + text + " 1",
+                "SEMICOLON ; null 1", "EOF  null 1" );
+        assertEquals( expected, tokens( new Scanner( trickle( source, 100 ) ).scan() ) );
+        assertEquals( expected, mapped( source ) );
+    }
+
+    public void testRefillKeepsOnlyABatchAhead()
+    {
+        String source = declarations( 1000 );
+        List<String> expected = expectedDeclarations( 1000 );
+        Scanner scanner = new Scanner( new StringReader( source ) );
+        List<String> scanned = new ArrayList<>();
+        TokenBuffer tokens = scanner.refill( 0 );
+        // Keeps the last token, as the parser does for previous().
+        int kept = 0;
+        while ( true )
+        {
+            assertTrue( tokens.size() <= 1024 + 1 );
+            for ( int i = kept; i < tokens.size(); i++ )
+            {
+                scanned.add( token( tokens, i ) );
+            }
+            if ( tokens.type( tokens.size() - 1 ) == TokenType.EOF )
+            {
+                break;
+            }
+            tokens = scanner.refill( tokens.size() - 1 );
+            assertEquals( expected.get( scanned.size() - 1 ), token( tokens, 0 ) );
+            kept = 1;
+        }
+        assertEquals( expected, scanned );
+    }
+
+    // var v0 = 0; on the first line, var v1 = 1; on the second and so on.
+    private static String declarations( int count )
+    {
+        StringBuilder source = new StringBuilder();
+        for ( int i = 0; i < count; i++ )
+        {
+            source.append( "var v" ).append( i ).append( " = " ).append( i ).append( ";\n" );
+        }
+        return source.toString();
+    }
+
+    private static List<String> expectedDeclarations( int count )
+    {
+        List<String> expected = new ArrayList<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            int line = i + 1;
+            expected.add( "VAR var null " + line );
+            expected.add( "IDENTIFIER v" + i + " null " + line );
+            expected.add( "EQUAL = null " + line );
+            expected.add( "NUMBER " + i + " " + (double) i + " " + line );
+            expected.add( "SEMICOLON ; null " + line );
+        }
+        expected.add( "EOF  null " + ( count + 1 ) );
+        return expected;
+    }
+
+    // A Reader that hands out at most size characters per read, so tokens straddle reads.
+    private static Reader trickle( String source, int size )
+    {
+        return new StringReader( source )
+        {
+            @Override
+            public int read( char[] chars, int offset, int length ) throws IOException
+            {
+                return super.read( chars, offset, Math.min( length, size ) );
+            }
+        };
+    }
+
+    // The tokens scanned from source written to a UTF-8 file and mapped into memory.
+    private static List<String> mapped( String source ) throws IOException
+    {
+        Path file = Files.createTempFile( "scanner", ".lox" );
+        try
+        {
+            Files.writeString( file, source, StandardCharsets.UTF_8 );
+            return tokens( Scanner.map( file ).scan() );
+        }
+        finally
+        {
+            Files.delete( file );
+        }
+    }
+
+    private static List<String> tokens( TokenBuffer tokens )
+    {
+        List<String> list = new ArrayList<>();
+        for ( int i = 0; i < tokens.size(); i++ )
+        {
+            list.add( token( tokens, i ) );
+        }
+        return list;
+    }
+
+    private static String token( TokenBuffer tokens, int index )
+    {
+        Token token = tokens.token( index );
+        return token.type + " " + token.lexeme + " " + token.literal + " " + token.line;
+    }
+}